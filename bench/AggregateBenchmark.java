@@ -0,0 +1,101 @@
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/** Compares counting the quakes per country in a HashMap keyed by country
+ * name, as buildQuakesCounts used to, with QuakeAggregates, on stores of the
+ * bundled quakes repeated up to a million times.  Both must give the same
+ * count for every country and for the ocean.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java AggregateBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class AggregateBenchmark {
+
+	private static final int[] COPIES = {1, 100, 3000};
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		int[] countryIds = new int[feed.size()];
+		for (int i = 0; i < countryIds.length; i++) {
+			countryIds[i] = index.findCountryId(feed.get(i).getLocation());
+		}
+
+		// what reading the allocation counter allocates itself
+		long overhead = Long.MAX_VALUE;
+		for (int r = 0; r < 3; r++) {
+			long bytes = BenchData.allocatedBytes();
+			overhead = Math.min(overhead, BenchData.allocatedBytes() - bytes);
+		}
+
+		for (int copies : COPIES) {
+			QuakeStore store = new QuakeStore(index.getCountries());
+			for (int c = 0; c < copies; c++) {
+				for (int i = 0; i < feed.size(); i++) {
+					store.add(feed.get(i), countryIds[i]);
+				}
+			}
+			QuakeAggregates aggregates = new QuakeAggregates(store);
+			HashMap<String, Integer> counts = null;
+			long mapBest = Long.MAX_VALUE, aggregateBest = Long.MAX_VALUE;
+			long mapBytes = 0, aggregateBytes = 0;
+			for (int r = 0; r < rounds; r++) {
+				long bytes = BenchData.allocatedBytes();
+				long start = System.nanoTime();
+				counts = countByName(store);
+				mapBest = Math.min(mapBest, System.nanoTime() - start);
+				mapBytes = BenchData.allocatedBytes() - bytes - overhead;
+
+				bytes = BenchData.allocatedBytes();
+				start = System.nanoTime();
+				aggregates.aggregate();
+				aggregateBest = Math.min(aggregateBest, System.nanoTime() - start);
+				aggregateBytes = BenchData.allocatedBytes() - bytes - overhead;
+			}
+
+			int mismatches = 0;
+			for (int id = 0; id < store.getCountryCount(); id++) {
+				Integer count = counts.get(store.getCountryName(id));
+				if (aggregates.getCount(id) != ((count == null) ? 0 : count)) {
+					mismatches++;
+				}
+			}
+			Integer ocean = counts.get(QuakeReport.OCEAN_QUAKES);
+			if (aggregates.getOceanCount() != ((ocean == null) ? 0 : ocean)) {
+				mismatches++;
+			}
+			BenchData.check(mismatches == 0);
+			System.out.printf("%8d quakes: HashMap %8.2f ms %10d bytes, QuakeAggregates %8.2f ms %6d bytes, "
+					+ "%d countries differ%n", store.size(), mapBest / 1e6, mapBytes, aggregateBest / 1e6,
+					aggregateBytes, mismatches);
+		}
+		BenchData.exitOnFailure();
+	}
+
+	// buildQuakesCounts before QuakeAggregates
+	private static HashMap<String, Integer> countByName(QuakeStore store) {
+		HashMap<String, Integer> quakeCount = new HashMap<String, Integer>();
+		for (int row = 0; row < store.size(); row++) {
+			if (store.isRemoved(row)) {
+				continue;
+			}
+			String key = store.isOnLand(row) ? store.getCountry(row) : QuakeReport.OCEAN_QUAKES;
+			if (quakeCount.containsKey(key)) {
+				quakeCount.put(key, quakeCount.get(key)+1);
+			}
+			else {
+				quakeCount.put(key, 1);
+			}
+		}
+		return quakeCount;
+	}
+}
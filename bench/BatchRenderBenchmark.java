@@ -0,0 +1,180 @@
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.core.PGraphics;
+import processing.core.PFont;
+import processing.core.PGraphicsJava2D;
+
+/** Compares drawing the quake and city markers one by one, each projected
+ * and saving and restoring the style, with drawing them through a
+ * MarkerBatch from positions projected once, as BatchedMarkerManager does
+ * while the map stands still.
+ *
+ * Both ways draw into their own 650x600 Java2D image with the same style
+ * set beforehand, for the whole world and for a view zoomed in on Japan.
+ * Some markers are hidden, selected or clicked, and a few clusters are
+ * mixed in, so the markers the batch hands back to their own draw method
+ * are covered too.  The two images must be identical, pixel for pixel.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true BatchRenderBenchmark [dataDir] [copies] [frames]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class BatchRenderBenchmark {
+
+	private static final int WIDTH = 650;
+	private static final int HEIGHT = 600;
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		int frames = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<CommonMarker> markers = new ArrayList<CommonMarker>();
+		markers.addAll(BenchData.createMarkers(
+				BenchData.scaleQuakes(data.loadQuakes("2.5_week.atom"), copies), index));
+		for (Feature city : data.loadGeoJSON("city-data.json")) {
+			markers.add(new CityMarker(city));
+		}
+		// ages are measured from the latest quake, as the sketch does for a
+		// feed it does not refresh
+		long latest = QuakeStore.NO_TIME;
+		for (CommonMarker marker : markers) {
+			if (marker instanceof EarthquakeMarker) {
+				latest = Math.max(latest, ((EarthquakeMarker) marker).getTime());
+			}
+		}
+		EarthquakeMarker.setReferenceTime(latest);
+		int pastDay = 0, labelled = 0;
+		for (int i = 0; i < markers.size(); i++) {
+			CommonMarker marker = markers.get(i);
+			if (marker instanceof EarthquakeMarker && ((EarthquakeMarker) marker).isPastDay()) {
+				pastDay++;
+			}
+			if (marker instanceof EarthquakeMarker && ((EarthquakeMarker) marker).getQuakeAge().isPastDay()) {
+				labelled++;
+			}
+			if (i % 13 == 0) {
+				marker.setHidden(true);
+			}
+			else if (i % 101 == 0) {
+				marker.setSelected(true);
+			}
+			else if (i % 211 == 0) {
+				marker.setClicked(true);
+			}
+			if (i % 500 == 0) {
+				markers.add(i, new ClusterMarker(marker.getLocation(), 20, 6, 1));
+			}
+		}
+
+		PGraphics single = newImage();
+		PGraphics batched = newImage();
+		MarkerBatch batch = new MarkerBatch();
+
+		Object[][] views = {
+				{"world, zoom 1", 0f, 20f, 1},
+				{"Japan, zoom 4", 138f, 36f, 4},
+		};
+		for (Object[] view : views) {
+			float centerLon = (Float) view[1], centerLat = (Float) view[2];
+			int zoom = (Integer) view[3];
+			double worldPixels = 256 * Math.pow(2, zoom);
+			double centerX = worldX(centerLon) * worldPixels, centerY = worldY(centerLat) * worldPixels;
+
+			long oneByOne = 0, batchedNanos = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				long start = System.nanoTime();
+				for (int f = 0; f < frames; f++) {
+					clear(single);
+					for (CommonMarker marker : markers) {
+						marker.draw(single, screenX(marker.getLocation(), centerX, worldPixels),
+								screenY(marker.getLocation(), centerY, worldPixels));
+					}
+				}
+				oneByOne = System.nanoTime() - start;
+
+				// the positions are kept from the first frame on, as for a still map
+				float[] xs = new float[markers.size()];
+				float[] ys = new float[markers.size()];
+				start = System.nanoTime();
+				for (int f = 0; f < frames; f++) {
+					clear(batched);
+					batch.begin(batched);
+					for (int i = 0; i < markers.size(); i++) {
+						CommonMarker marker = markers.get(i);
+						if (f == 0) {
+							xs[i] = screenX(marker.getLocation(), centerX, worldPixels);
+							ys[i] = screenY(marker.getLocation(), centerY, worldPixels);
+						}
+						batch.draw(marker, xs[i], ys[i]);
+					}
+					batch.end();
+				}
+				batchedNanos = System.nanoTime() - start;
+			}
+
+			single.loadPixels();
+			batched.loadPixels();
+			int different = 0;
+			for (int p = 0; p < single.pixels.length; p++) {
+				if (single.pixels[p] != batched.pixels[p]) {
+					different++;
+				}
+			}
+			BenchData.check(different == 0);
+			System.out.printf("%-15s %6d markers (%d past day, %d labelled so): %.2f ms per frame one by one, "
+					+ "%.2f ms batched, %d of %d pixels differ%n",
+					view[0], markers.size(), pastDay, labelled, oneByOne / 1e6 / frames, batchedNanos / 1e6 / frames,
+					different, single.pixels.length);
+		}
+		single.endDraw();
+		batched.endDraw();
+		BenchData.exitOnFailure();
+	}
+
+	// an image with a stroke other than the black stroke of the X over
+	// recent quakes, so a marker drawn with the X's stroke shows
+	private static PGraphics newImage() {
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(WIDTH, HEIGHT);
+		pg.beginDraw();
+		pg.stroke(90, 60, 30);
+		pg.strokeWeight(1.5f);
+		pg.fill(200);
+		// titles and cluster counts draw text, which needs a font; its glyph
+		// images are used, since the native font's metrics need a sketch
+		PFont font = new PFont(new Font("SansSerif", Font.PLAIN, 12), true, PFont.CHARSET);
+		font.setNative(null);
+		pg.textFont(font);
+		return pg;
+	}
+
+	private static void clear(PGraphics pg) {
+		pg.background(255);
+	}
+
+	private static float screenX(Location location, double centerX, double worldPixels) {
+		return (float) (worldX(location.getLon()) * worldPixels - centerX + WIDTH/2);
+	}
+
+	private static float screenY(Location location, double centerY, double worldPixels) {
+		return (float) (worldY(location.getLat()) * worldPixels - centerY + HEIGHT/2);
+	}
+
+	private static double worldX(double lon) {
+		return (lon + 180) / 360;
+	}
+
+	private static double worldY(double lat) {
+		double sin = Math.sin(Math.toRadians(lat));
+		return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+	}
+}
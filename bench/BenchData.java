@@ -0,0 +1,149 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.GeoJSONReader;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+import parsing.ParseFeed;
+import processing.data.XML;
+
+/** Loads the bundled data files for the benchmarks, without a PApplet
+ * 
+ * @author Hamadi McIntosh
+ *
+ */
+public class BenchData {
+
+	// correctness checks that failed in this run
+	private static int failures;
+
+	private File dataDir;
+
+	public BenchData(String dataDir) {
+		this.dataDir = new File(dataDir);
+	}
+
+	public File file(String name) {
+		return new File(dataDir, name);
+	}
+
+	public List<Feature> loadGeoJSON(String name) throws IOException {
+		String json = readText(name);
+		return GeoJSONReader.loadDataFromJSON(null, json);
+	}
+
+	public List<Marker> loadCountryMarkers() throws IOException {
+		return MapUtils.createSimpleMarkers(loadGeoJSON("countries.geo.json"));
+	}
+
+	public List<PointFeature> loadQuakes(String feed) throws Exception {
+		return ParseFeed.parseEarthquake(new XML(file(feed)));
+	}
+
+	public List<PointFeature> loadAirports() throws IOException {
+		return ParseFeed.parseAirports(Files.newBufferedReader(file("airports.dat").toPath(), Charset.forName("UTF-8")));
+	}
+
+	public List<ShapeFeature> loadRoutes() throws IOException {
+		return ParseFeed.parseRoutes(Files.newBufferedReader(file("routes.dat").toPath(), Charset.forName("UTF-8")));
+	}
+
+	/** Returns the file's contents as text */
+	public String readText(String name) throws IOException {
+		return new String(Files.readAllBytes(file(name).toPath()), Charset.forName("UTF-8"));
+	}
+
+	/** Repeats the quakes copies times, each copy moved by a random offset
+	 * of about a degree, so larger feeds keep the bundled feed's distribution
+	 */
+	public static List<PointFeature> scaleQuakes(List<PointFeature> quakes, int copies) {
+		List<PointFeature> scaled = new ArrayList<PointFeature>();
+		java.util.Random random = new java.util.Random(1);
+		for (int c = 0; c < copies; c++) {
+			for (PointFeature quake : quakes) {
+				Location loc = quake.getLocation();
+				PointFeature copy = new PointFeature(new Location(
+						loc.getLat() + (float) random.nextGaussian(), loc.getLon() + (float) random.nextGaussian()));
+				copy.setProperties(quake.getProperties());
+				scaled.add(copy);
+			}
+		}
+		return scaled;
+	}
+
+	/** Returns the Atom feed with its entries repeated copies times */
+	public static String scaleFeed(String feed, int copies) {
+		int first = feed.indexOf("<entry>");
+		int last = feed.lastIndexOf("</entry>") + "</entry>".length();
+		String entries = feed.substring(first, last);
+		StringBuilder scaled = new StringBuilder(feed.length() + (copies - 1)*entries.length());
+		scaled.append(feed, 0, first);
+		for (int c = 0; c < copies; c++) {
+			scaled.append(entries);
+		}
+		scaled.append(feed, last, feed.length());
+		return scaled.toString();
+	}
+
+	/** Returns the rows of a CSV file repeated copies times */
+	public static String scaleRows(String csv, int copies) {
+		if (!csv.endsWith("\n")) {
+			csv = csv + "\n";
+		}
+		StringBuilder scaled = new StringBuilder(copies*csv.length());
+		for (int c = 0; c < copies; c++) {
+			scaled.append(csv);
+		}
+		return scaled.toString();
+	}
+
+	/** Classifies the quakes and builds their markers, as the sketch does */
+	public static List<EarthquakeMarker> createMarkers(List<PointFeature> quakes, CountryIndex index) {
+		return createMarkers(quakes, index, new QuakeStore(index.getCountryNames()));
+	}
+
+	/** Classifies the quakes and builds their markers, backed by the given store */
+	public static List<EarthquakeMarker> createMarkers(List<PointFeature> quakes, CountryIndex index,
+			QuakeStore store) {
+		List<EarthquakeMarker> markers = new ArrayList<EarthquakeMarker>();
+		for (PointFeature quake : quakes) {
+			markers.add(EarthquakeMarker.create(store, quake, index.findCountryId(quake.getLocation())));
+		}
+		return markers;
+	}
+
+	/** Bytes allocated so far by the current thread, or -1 if not supported */
+	public static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/** Records the result of a correctness check and returns it, so the
+	 * benchmark can still print it.  Benchmarks end with exitOnFailure.
+	 */
+	public static boolean check(boolean passed) {
+		if (!passed) {
+			failures++;
+		}
+		return passed;
+	}
+
+	/** Exits with status 1 if any check in this run failed */
+	public static void exitOnFailure() {
+		if (failures > 0) {
+			System.err.println(failures + " correctness check(s) failed");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+import java.io.ByteArrayInputStream;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+import parsing.ParseFeed;
+import parsing.QuakeFeedReader;
+import processing.data.XML;
+
+/** Throughput and allocation of the sketch's hot paths that do not draw,
+ * on the bundled data and on synthetic scale-ups of it
+ *
+ * At every scale the bundled feed's entries, quakes and CSV rows are repeated
+ * that many times (quakes at jittered locations, see BenchData), and each case
+ * runs for a fixed time after a warmup.  The table gives the operations per
+ * second, the time and bytes allocated per operation and per item, so runs
+ * before and after a change can be compared.  With a file name as last
+ * argument the rows are also written there as CSV.
+ *
+ * The other benchmarks in this folder check one change against the code it
+ * replaced; this suite only measures the current code.  The JMH module in
+ * the jmh folder runs the same cases, by name and scale, with JMH's forks,
+ * warmup and GC profiler; see createCase.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java BenchmarkSuite [dataDir] [scales] [filter] [csvFile]
+ * e.g. java BenchmarkSuite data 1,10,100 classify results.csv
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class BenchmarkSuite {
+
+	private static final long WARMUP_NANOS = 300000000L;
+	private static final long MEASURE_NANOS = 1000000000L;
+
+	// keeps the results of the cases alive, so no case is optimized away
+	private static long sink;
+
+	/** One operation to measure, over a number of items.  getAsLong runs
+	 * the operation once and returns anything derived from its result.
+	 */
+	public abstract static class Case implements LongSupplier {
+		final String name;
+		final int scale;
+		final int items;
+
+		Case(String name, int scale, int items) {
+			this.name = name;
+			this.scale = scale;
+			this.items = items;
+		}
+	}
+
+	/** The bundled data the cases are built from, loaded once for all scales */
+	private static class Fixture {
+		private CountryIndex countryIndex;
+		private List<Marker> cities = new ArrayList<Marker>();
+		private ProximityIndex cityIndex;
+		private String feedText;
+		private List<PointFeature> feed;
+		private String airportsText;
+		private String lifeText;
+
+		Fixture(String dataDir) throws Exception {
+			BenchData data = new BenchData(dataDir);
+			countryIndex = new CountryIndex(data.loadCountryMarkers());
+			for (de.fhpotsdam.unfolding.data.Feature city : data.loadGeoJSON("city-data.json")) {
+				cities.add(new CityMarker(city));
+			}
+			cityIndex = ProximityIndex.ofMarkers(cities);
+			feedText = data.readText("2.5_week.atom");
+			feed = ParseFeed.parseEarthquake(XML.parse(feedText));
+			airportsText = data.readText("airports.dat");
+			lifeText = data.readText("LifeExpectancyWorldBank.csv");
+		}
+
+		// the cases of one scale, in the order they are reported
+		List<Case> cases(final int scale) {
+			List<Case> cases = new ArrayList<Case>();
+			final byte[] scaledFeed = BenchData.scaleFeed(feedText, scale).getBytes(StandardCharsets.UTF_8);
+			final String scaledAirports = BenchData.scaleRows(airportsText, scale);
+			final String scaledLife = BenchData.scaleRows(lifeText, scale);
+			final List<PointFeature> quakes = BenchData.scaleQuakes(feed, scale);
+			final QuakeStore store = new QuakeStore(countryIndex.getCountryNames());
+			final List<EarthquakeMarker> markers = BenchData.createMarkers(quakes, countryIndex, store);
+			final ProximityIndex quakeIndex = ProximityIndex.ofThreatCircles(markers);
+
+			cases.add(new Case("parse.feed.stream", scale, quakes.size()) {
+				public long getAsLong() {
+					QuakeFeedReader reader = new QuakeFeedReader(new ByteArrayInputStream(scaledFeed));
+					long count = 0;
+					while (reader.hasNext()) {
+						count += reader.next().getLocation().hashCode();
+					}
+					return count;
+				}
+			});
+			cases.add(new Case("parse.feed.dom", scale, quakes.size()) {
+				public long getAsLong() {
+					try {
+						return ParseFeed.parseEarthquake(XML.parse(new String(scaledFeed, StandardCharsets.UTF_8))).size();
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			cases.add(new Case("classify.index", scale, quakes.size()) {
+				public long getAsLong() {
+					long sum = 0;
+					for (PointFeature quake : quakes) {
+						sum += countryIndex.findCountryId(quake.getLocation());
+					}
+					return sum;
+				}
+			});
+			cases.add(new Case("classify.isLand", scale, quakes.size()) {
+				public long getAsLong() {
+					long count = 0;
+					for (PointFeature quake : quakes) {
+						if (countryIndex.isLand(quake)) {
+							count++;
+						}
+					}
+					return count;
+				}
+			});
+			if (scale <= 10) {
+				// the isInCountry scan over all countries, too slow to run at larger scales
+				cases.add(new Case("classify.linear", scale, quakes.size()) {
+					public long getAsLong() {
+						long count = 0;
+						for (PointFeature quake : quakes) {
+							if (countryIndex.findCountryLinear(quake.getLocation()) != null) {
+								count++;
+							}
+						}
+						return count;
+					}
+				});
+			}
+			cases.add(new Case("sort.compareTo", scale, markers.size()) {
+				public long getAsLong() {
+					List<EarthquakeMarker> list = new ArrayList<EarthquakeMarker>(markers);
+					Collections.sort(list);
+					return list.get(0).getRow();
+				}
+			});
+			cases.add(new Case("sort.rowsByMagnitude", scale, markers.size()) {
+				public long getAsLong() {
+					return store.rowsByMagnitude()[0];
+				}
+			});
+			cases.add(new Case("sort.sortAndPrint", scale, markers.size()) {
+				public long getAsLong() {
+					// without the printing
+					int[] rows = store.topRows(20, QuakeKey.MAGNITUDE);
+					long sum = 0;
+					for (int i = 0; i < Math.min(20, rows.length); i++) {
+						sum += store.getTitle(rows[i]).length();
+					}
+					return sum;
+				}
+			});
+			final QuakeReport report = new QuakeReport(store);
+			cases.add(new Case("counts.buildQuakesCounts", scale, store.size()) {
+				public long getAsLong() {
+					report.buildQuakesCounts();
+					return report.getAggregates().getOceanCount();
+				}
+			});
+			cases.add(new Case("threat.index.ofThreatCircles", scale, markers.size()) {
+				public long getAsLong() {
+					return ProximityIndex.ofThreatCircles(markers).size();
+				}
+			});
+			cases.add(new Case("threat.covering.cities", scale, cities.size()) {
+				public long getAsLong() {
+					long count = 0;
+					for (Marker city : cities) {
+						count += quakeIndex.covering(city.getLocation()).length;
+					}
+					return count;
+				}
+			});
+			cases.add(new Case("threat.within.quakes", scale, markers.size()) {
+				public long getAsLong() {
+					long count = 0;
+					for (EarthquakeMarker quake : markers) {
+						count += cityIndex.within(quake.getLocation(), quake.threatCircle()).length;
+					}
+					return count;
+				}
+			});
+			cases.add(new Case("csv.parseAirports", scale, lines(scaledAirports)) {
+				public long getAsLong() {
+					return ParseFeed.parseAirports(new StringReader(scaledAirports)).size();
+				}
+			});
+			cases.add(new Case("csv.loadLifeExpectancyFromCSV", scale, lines(scaledLife)) {
+				public long getAsLong() {
+					return ParseFeed.loadLifeExpectancyFromCSV(new StringReader(scaledLife)).size();
+				}
+			});
+			return cases;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		String scales = (args.length > 1) ? args[1] : "1,10,100";
+		String filter = (args.length > 2) ? args[2] : "";
+		String csvFile = (args.length > 3) ? args[3] : null;
+
+		Fixture fixture = new Fixture(dataDir);
+		List<Case> cases = new ArrayList<Case>();
+		for (String s : scales.split(",")) {
+			cases.addAll(fixture.cases(Integer.parseInt(s.trim())));
+		}
+
+		PrintWriter csv = (csvFile != null) ? new PrintWriter(new FileWriter(csvFile)) : null;
+		if (csv != null) {
+			csv.println("case,scale,items,ops_per_s,ms_per_op,ns_per_item,bytes_per_op,bytes_per_item");
+		}
+		System.out.printf("%-32s %6s %8s %10s %10s %10s %12s %10s%n", "case", "scale", "items",
+				"ops/s", "ms/op", "ns/item", "bytes/op", "bytes/item");
+		for (Case c : cases) {
+			if (!c.name.contains(filter)) {
+				continue;
+			}
+			measure(c, WARMUP_NANOS);
+			double[] result = measure(c, MEASURE_NANOS);
+			double ops = result[0], nanos = result[1], bytes = result[2];
+			double nanosPerOp = nanos / ops;
+			double bytesPerOp = (bytes < 0) ? -1 : bytes / ops;
+			System.out.printf("%-32s %6d %8d %10.1f %10.3f %10.1f %12.0f %10.1f%n", c.name, c.scale, c.items,
+					1e9 / nanosPerOp, nanosPerOp / 1e6, nanosPerOp / c.items, bytesPerOp, bytesPerOp / c.items);
+			if (csv != null) {
+				csv.println(String.format(Locale.ROOT, "%s,%d,%d,%.3f,%.6f,%.3f,%.1f,%.3f", c.name, c.scale,
+						c.items, 1e9 / nanosPerOp, nanosPerOp / 1e6, nanosPerOp / c.items, bytesPerOp,
+						bytesPerOp / c.items));
+			}
+		}
+		if (csv != null) {
+			csv.close();
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/** Returns the case of the given name and scale, or null if there is
+	 * none, e.g. for classify.linear above a scale of 10.  Harnesses outside
+	 * the default package, such as the JMH module, call it by reflection.
+	 */
+	public static Case createCase(String dataDir, String name, int scale) throws Exception {
+		for (Case c : new Fixture(dataDir).cases(scale)) {
+			if (c.name.equals(name)) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	// runs the case for at least the given time; returns the number of
+	// operations, their time and the bytes they allocated
+	private static double[] measure(Case c, long nanos) {
+		long ops = 0;
+		long bytes = BenchData.allocatedBytes();
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink += c.getAsLong();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < nanos);
+		long allocated = BenchData.allocatedBytes();
+		return new double[] { ops, elapsed, (bytes < 0) ? -1 : allocated - bytes };
+	}
+
+	private static int lines(String text) {
+		int count = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,74 @@
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/** Measures what QuakeClusterLayer saves per frame: for every clustered zoom
+ * level it reports the number of markers drawn and the time to draw them,
+ * against drawing every quake.  It also checks that the clusters of each
+ * level account for every quake exactly once.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true ClusterBenchmark [dataDir] [feed] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ClusterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		String feed = (args.length > 1) ? args[1] : "2.5_week.atom";
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<Marker> quakes = new ArrayList<Marker>(
+				BenchData.createMarkers(data.loadQuakes(feed), index));
+
+		long start = System.nanoTime();
+		List<List<Marker>> levels = QuakeClusterLayer.buildLevels(quakes);
+		System.out.printf("built %d levels for %d quakes in %.3f ms%n",
+				levels.size(), quakes.size(), (System.nanoTime() - start) / 1e6);
+
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(650, 600);
+		pg.beginDraw();
+		// a sketch has a default font, a bare renderer does not; without a
+		// PApplet the renderer can only draw the font's own glyph images
+		PFont font = new PFont(new Font("SansSerif", Font.PLAIN, 12), true,
+				"0123456789".toCharArray());
+		font.setNative(null);
+		pg.textFont(font);
+		double all = drawTime(pg, quakes, rounds);
+		for (int z = 0; z < levels.size(); z++) {
+			List<Marker> level = levels.get(z);
+			int total = 0;
+			for (Marker m : level) {
+				total += (m instanceof ClusterMarker) ? ((ClusterMarker) m).getCount() : 1;
+			}
+			System.out.printf("zoom %d: %d markers for %d quakes%s, %.1f us per frame (all quakes %.1f us)%n",
+					z, level.size(), total, BenchData.check(total == quakes.size()) ? "" : " MISMATCH",
+					drawTime(pg, level, rounds), all);
+		}
+		pg.endDraw();
+		BenchData.exitOnFailure();
+	}
+
+	// microseconds to draw the markers once, best of the rounds
+	private static double drawTime(PGraphics pg, List<Marker> markers, int rounds) {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			for (Marker m : markers) {
+				((CommonMarker) m).drawMarker(pg, 325, 300);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1e3;
+	}
+}
@@ -0,0 +1,66 @@
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Compares CountryIndex lookups against the linear scan over all country
+ * polygons, on the bundled earthquake feeds.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java CountryIndexBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CountryIndexBenchmark {
+
+	private static final String[] FEEDS = {"2.5_week.atom", "quiz1.atom"};
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		BenchData data = new BenchData(dataDir);
+		List<Marker> countryMarkers = data.loadCountryMarkers();
+
+		long start = System.nanoTime();
+		CountryIndex index = new CountryIndex(countryMarkers);
+		System.out.printf("index build: %d parts in %.2f ms%n", index.getNumParts(),
+				(System.nanoTime() - start) / 1e6);
+
+		for (String feed : FEEDS) {
+			List<PointFeature> quakes = data.loadQuakes(feed);
+
+			// results must match the linear scan exactly
+			int mismatches = 0;
+			for (PointFeature quake : quakes) {
+				if (index.findCountry(quake.getLocation()) != index.findCountryLinear(quake.getLocation())) {
+					mismatches++;
+				}
+			}
+
+			long linear = Long.MAX_VALUE;
+			long indexed = Long.MAX_VALUE;
+			int sink = 0;
+			for (int r = 0; r < rounds; r++) {
+				start = System.nanoTime();
+				for (PointFeature quake : quakes) {
+					if (index.findCountryLinear(quake.getLocation()) != null) sink++;
+				}
+				linear = Math.min(linear, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for (PointFeature quake : quakes) {
+					if (index.findCountry(quake.getLocation()) != null) sink++;
+				}
+				indexed = Math.min(indexed, System.nanoTime() - start);
+			}
+
+			BenchData.check(mismatches == 0);
+			System.out.printf("%s: %d quakes, linear %.3f ms, indexed %.3f ms, speedup %.1fx, mismatches %d (%d)%n",
+					feed, quakes.size(), linear / 1e6, indexed / 1e6, (double) linear / indexed,
+					mismatches, sink);
+		}
+		BenchData.exitOnFailure();
+	}
+}
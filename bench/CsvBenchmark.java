@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import parsing.CsvReader;
+import parsing.ParseFeed;
+
+/** Compares ParseFeed.parseAirports and loadLifeExpectancyFromCSV, which
+ * stream the files through CsvReader, with the previous implementation,
+ * which loaded every line and split it with a lookahead regex.  Both must
+ * give the same features and map, and CsvReader.split must agree with the
+ * regex on randomly generated rows.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java CsvBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CsvBenchmark {
+
+	private static final String SPLIT_REGEX = ",(?=([^\"]*\"[^\"]*\")*[^\"]*$)";
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		BenchData data = new BenchData(dataDir);
+		File airports = data.file("airports.dat");
+		File lifeExpectancy = data.file("LifeExpectancyWorldBank.csv");
+
+		// random rows of commas, quotes, doubled quotes and text
+		java.util.Random random = new java.util.Random(1);
+		String[] pieces = { ",", "\"", "\"\"", "a", "bc", " ", ",," };
+		int mismatches = 0;
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder row = new StringBuilder();
+			int count = random.nextInt(12);
+			for (int j = 0; j < count; j++) {
+				row.append(pieces[random.nextInt(pieces.length)]);
+			}
+			if (!Arrays.equals(row.toString().split(SPLIT_REGEX), CsvReader.split(row.toString()))) {
+				mismatches++;
+			}
+		}
+		BenchData.check(mismatches == 0);
+		System.out.println("random rows split differently from the regex: " + mismatches);
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			long regexBest = Long.MAX_VALUE, csvBest = Long.MAX_VALUE;
+			long regexBytes = 0, csvBytes = 0;
+			List<PointFeature> regexAirports = null, csvAirports = null;
+			for (int r = 0; r < rounds; r++) {
+				long bytes = BenchData.allocatedBytes();
+				long start = System.nanoTime();
+				regexAirports = parseAirportsWithRegex(airports);
+				regexBest = Math.min(regexBest, System.nanoTime() - start);
+				regexBytes = BenchData.allocatedBytes() - bytes;
+
+				bytes = BenchData.allocatedBytes();
+				start = System.nanoTime();
+				csvAirports = ParseFeed.parseAirports(open(airports));
+				csvBest = Math.min(csvBest, System.nanoTime() - start);
+				csvBytes = BenchData.allocatedBytes() - bytes;
+			}
+			if (warmup == 1) {
+				System.out.printf("airports.dat, %d airports: regex %.2f ms %d KB, CsvReader %.2f ms %d KB, %s%n",
+						csvAirports.size(), regexBest / 1e6, regexBytes / 1024, csvBest / 1e6, csvBytes / 1024,
+						BenchData.check(sameAirports(regexAirports, csvAirports)) ? "same features" : "FEATURES DIFFER");
+			}
+
+			regexBest = Long.MAX_VALUE;
+			csvBest = Long.MAX_VALUE;
+			HashMap<String, Float> regexMap = null, csvMap = null;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				regexMap = loadLifeExpectancyWithRegex(lifeExpectancy);
+				regexBest = Math.min(regexBest, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				csvMap = ParseFeed.loadLifeExpectancyFromCSV(open(lifeExpectancy));
+				csvBest = Math.min(csvBest, System.nanoTime() - start);
+			}
+			if (warmup == 1) {
+				System.out.printf("%s, %d countries: regex %.2f ms, CsvReader %.2f ms, %s%n",
+						lifeExpectancy.getName(), csvMap.size(), regexBest / 1e6, csvBest / 1e6,
+						BenchData.check(regexMap.equals(csvMap)) ? "same map" : "MAPS DIFFER");
+			}
+		}
+		BenchData.exitOnFailure();
+	}
+
+	private static Reader open(File file) throws Exception {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	}
+
+	// loadStrings, as PApplet implements it
+	private static String[] loadStrings(File file) throws Exception {
+		BufferedReader reader = (BufferedReader) open(file);
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	// what parseAirports used to do
+	private static List<PointFeature> parseAirportsWithRegex(File file) throws Exception {
+		List<PointFeature> features = new ArrayList<PointFeature>();
+		for (String row : loadStrings(file)) {
+			String[] columns = row.split(SPLIT_REGEX);
+			PointFeature point = new PointFeature(new de.fhpotsdam.unfolding.geo.Location(
+					Float.parseFloat(columns[6]), Float.parseFloat(columns[7])));
+			point.setId(columns[0]);
+			point.addProperty("name", columns[1]);
+			point.putProperty("city", columns[2]);
+			point.putProperty("country", columns[3]);
+			if (!columns[4].equals("")) {
+				point.putProperty("code", columns[4]);
+			}
+			else if (!columns[5].equals("")) {
+				point.putProperty("code", columns[5]);
+			}
+			point.putProperty("altitude", columns[8]);
+			features.add(point);
+		}
+		return features;
+	}
+
+	// what loadLifeExpectancyFromCSV used to do
+	private static HashMap<String, Float> loadLifeExpectancyWithRegex(File file) throws Exception {
+		HashMap<String, Float> lifeExpMap = new HashMap<String, Float>();
+		for (String row : loadStrings(file)) {
+			String[] columns = row.split(SPLIT_REGEX);
+			for (int i = columns.length - 1; i > 3; i--) {
+				if (!columns[i].equals("..")) {
+					lifeExpMap.put(columns[3], Float.parseFloat(columns[i]));
+					break;
+				}
+			}
+		}
+		return lifeExpMap;
+	}
+
+	private static boolean sameAirports(List<PointFeature> a, List<PointFeature> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (!a.get(i).getId().equals(b.get(i).getId()) ||
+					!a.get(i).getLocation().equals(b.get(i).getLocation()) ||
+					!a.get(i).getProperties().equals(b.get(i).getProperties())) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/** Compares drawing every quake marker with drawing only those inside the
+ * Viewport, for a 650x600 map zoomed in on Japan, on the Pacific across the
+ * antimeridian, and showing the whole world.
+ *
+ * Markers are placed on screen with the Web Mercator projection the map
+ * uses.  Every marker whose circle reaches into the map must be inside the
+ * viewport, also when the bounds of a view that does not span the world are
+ * given wrapped to +/-180.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true CullingBenchmark [dataDir] [copies] [frames]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CullingBenchmark {
+
+	private static final int WIDTH = 650;
+	private static final int HEIGHT = 600;
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int frames = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<EarthquakeMarker> quakes = BenchData.createMarkers(
+				BenchData.scaleQuakes(data.loadQuakes("2.5_week.atom"), copies), index);
+
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(WIDTH, HEIGHT);
+		pg.beginDraw();
+
+		Object[][] views = {
+				{"Japan, zoom 5", 138f, 36f, 5},
+				{"antimeridian, zoom 4", 180f, -20f, 4},
+				{"world, zoom 1", 0f, 20f, 1},
+		};
+		for (Object[] view : views) {
+			float centerLon = (Float) view[1], centerLat = (Float) view[2];
+			int zoom = (Integer) view[3];
+			double worldPixels = 256 * Math.pow(2, zoom);
+			double centerX = worldX(centerLon) * worldPixels, centerY = worldY(centerLat) * worldPixels;
+
+			// the bounds the map would report for its corners, grown by the margin
+			float m = Viewport.MARGIN_PIXELS;
+			float west = lonAt(centerX - WIDTH/2 - m, worldPixels);
+			float east = lonAt(centerX + WIDTH/2 + m, worldPixels);
+			float north = latAt(centerY - HEIGHT/2 - m, worldPixels);
+			float south = latAt(centerY + HEIGHT/2 + m, worldPixels);
+			Viewport viewport = new Viewport();
+			viewport.set(north, south, west, east);
+			Viewport normalized = new Viewport();
+			normalized.set(north, south, normalize(west), normalize(east));
+
+			int onScreen = 0, lost = 0, inside = 0, disagree = 0;
+			for (EarthquakeMarker quake : quakes) {
+				float x = screenX(quake.getLocation(), centerX, worldPixels);
+				float y = screenY(quake.getLocation(), centerY, worldPixels);
+				float r = quake.getRadius();
+				boolean visible = x + r >= 0 && x - r <= WIDTH && y + r >= 0 && y - r <= HEIGHT;
+				boolean contained = viewport.contains(quake.getLocation());
+				if (visible) {
+					onScreen++;
+					if (!contained) {
+						lost++;
+					}
+				}
+				if (contained) {
+					inside++;
+				}
+				if (east - west < 360 && contained && !normalized.contains(quake.getLocation())) {
+					disagree++;
+				}
+			}
+
+			long all = 0, culled = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				all = drawFrames(pg, quakes, null, centerX, centerY, worldPixels, frames);
+				culled = drawFrames(pg, quakes, viewport, centerX, centerY, worldPixels, frames);
+			}
+			BenchData.check(lost == 0 && disagree == 0);
+			System.out.printf("%-22s %7d quakes, %6d on screen, %6d drawn after culling, %d lost, "
+					+ "%d lost with wrapped bounds: %.2f ms per frame drawing all, %.2f ms culled%n",
+					view[0], quakes.size(), onScreen, inside, lost, disagree,
+					all / 1e6 / frames, culled / 1e6 / frames);
+		}
+		pg.endDraw();
+		BenchData.exitOnFailure();
+	}
+
+	// projects and draws the markers, skipping those outside the viewport
+	// first if there is one, as CommonMarker.draw(UnfoldingMap) does
+	private static long drawFrames(PGraphics pg, List<EarthquakeMarker> quakes, Viewport viewport,
+			double centerX, double centerY, double worldPixels, int frames) {
+		long start = System.nanoTime();
+		for (int f = 0; f < frames; f++) {
+			for (EarthquakeMarker quake : quakes) {
+				if (viewport != null && !viewport.contains(quake.getLocation())) {
+					continue;
+				}
+				float x = screenX(quake.getLocation(), centerX, worldPixels);
+				float y = screenY(quake.getLocation(), centerY, worldPixels);
+				quake.draw(pg, x, y);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static float screenX(Location location, double centerX, double worldPixels) {
+		return (float) (worldX(location.getLon()) * worldPixels - centerX + WIDTH/2);
+	}
+
+	private static float screenY(Location location, double centerY, double worldPixels) {
+		return (float) (worldY(location.getLat()) * worldPixels - centerY + HEIGHT/2);
+	}
+
+	private static double worldX(double lon) {
+		return (lon + 180) / 360;
+	}
+
+	private static double worldY(double lat) {
+		double sin = Math.sin(Math.toRadians(lat));
+		return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+	}
+
+	// the inverse projection; longitudes are not wrapped, as the map's are not
+	private static float lonAt(double x, double worldPixels) {
+		return (float) (x / worldPixels * 360 - 180);
+	}
+
+	private static float latAt(double y, double worldPixels) {
+		double n = Math.PI * (1 - 2 * y / worldPixels);
+		return (float) Math.toDegrees(Math.atan(Math.sinh(n)));
+	}
+
+	private static float normalize(float lon) {
+		return (lon > 180) ? lon - 360 : ((lon < -180) ? lon + 360 : lon);
+	}
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/** Times RouteImpact on the bundled airports and routes, for the bundled
+ * feed and for copies of its quakes at jittered locations, and checks the
+ * threatened airports, affected routes and per-airport counts against
+ * nested loops over all quakes, airports and routes.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java ImpactBenchmark [dataDir] [copies] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ImpactBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+		BenchData data = new BenchData(dataDir);
+		RouteGraph graph = new RouteGraph(data.loadAirports(), data.loadRoutes());
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		List<PointFeature> large = BenchData.scaleQuakes(feed, copies);
+
+		List<List<EarthquakeMarker>> sets = new ArrayList<List<EarthquakeMarker>>();
+		sets.add(BenchData.createMarkers(feed, index));
+		sets.add(BenchData.createMarkers(large, index));
+		for (List<EarthquakeMarker> quakes : sets) {
+			RouteImpact impact = null;
+			long best = Long.MAX_VALUE;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				impact = new RouteImpact(graph, quakes);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			long start = System.nanoTime();
+			boolean same = matchesNestedLoops(impact, graph, quakes);
+			long loops = System.nanoTime() - start;
+
+			System.out.printf("%d quakes: %d airports threatened, %d routes affected, %d airports ranked: "
+					+ "%.2f ms, nested loops %.0f ms, %s%n",
+					quakes.size(), impact.getThreatenedAirports().length, impact.getAffectedRouteCount(),
+					impact.getRankedAirports().length, best / 1e6, loops / 1e6, BenchData.check(same) ? "same impact" : "IMPACT DIFFERS");
+			int[] ranked = impact.getRankedAirports();
+			for (int i = 0; i < Math.min(3, ranked.length); i++) {
+				int a = ranked[i];
+				System.out.printf("  %s: %d of %d routes affected%n", graph.getAirport(a).getProperty("name"),
+						impact.getAffectedRouteCount(a), graph.degree(a));
+			}
+		}
+		BenchData.exitOnFailure();
+	}
+
+	private static boolean matchesNestedLoops(RouteImpact impact, RouteGraph graph, List<EarthquakeMarker> quakes) {
+		boolean[] threatened = new boolean[graph.size()];
+		for (int a = 0; a < graph.size(); a++) {
+			for (EarthquakeMarker quake : quakes) {
+				if (quake.getDistanceTo(graph.getAirport(a).getLocation()) <= quake.threatCircle()) {
+					threatened[a] = true;
+					break;
+				}
+			}
+		}
+		List<Integer> routes = new ArrayList<Integer>();
+		int[] counts = new int[graph.size()];
+		for (int r = 0; r < graph.getRouteCount(); r++) {
+			if (threatened[graph.getSource(r)] || threatened[graph.getDestination(r)]) {
+				routes.add(r);
+				counts[graph.getSource(r)]++;
+				counts[graph.getDestination(r)]++;
+			}
+		}
+		for (int a = 0; a < graph.size(); a++) {
+			if (threatened[a] != impact.isThreatened(a) || counts[a] != impact.getAffectedRouteCount(a)) {
+				return false;
+			}
+		}
+		int[] affected = impact.getAffectedRoutes();
+		if (affected.length != routes.size()) {
+			return false;
+		}
+		for (int i = 0; i < affected.length; i++) {
+			if (affected[i] != routes.get(i)) {
+				return false;
+			}
+		}
+		// ranked by count, then fraction
+		int[] ranked = impact.getRankedAirports();
+		for (int i = 1; i < ranked.length; i++) {
+			int a = ranked[i - 1], b = ranked[i];
+			if (counts[a] < counts[b] || (counts[a] == counts[b] &&
+					impact.getAffectedFraction(a) < impact.getAffectedFraction(b))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,196 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Times building the ImpactEdges table from the city index, for the
+ * bundled feed and for copies of its quakes at jittered locations, and
+ * compares looking up the cities of a quake in the table with querying the
+ * city index for every quake, as the threat lines did on every frame.
+ *
+ * The cities of every quake must be those a loop over all cities with
+ * getDistanceTo finds, and a table built for half the quakes and extended
+ * with the rest must equal one built at once.  So must a table compacted
+ * after removing most quakes and appending the rest, and the compacted
+ * store must hold the live quakes' values in their old order.  A city threat
+ * table updated before the compaction, as the sketch does, must equal one
+ * built from the compacted store.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java ImpactEdgesBenchmark [dataDir] [copies] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ImpactEdgesBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<Marker> cities = new ArrayList<Marker>();
+		for (Feature city : data.loadGeoJSON("city-data.json")) {
+			cities.add(new CityMarker(city));
+		}
+		ProximityIndex cityIndex = ProximityIndex.ofMarkers(cities);
+
+		for (int scale : new int[] { 1, copies }) {
+			List<PointFeature> features = BenchData.scaleQuakes(data.loadQuakes("2.5_week.atom"), scale);
+			QuakeStore store = new QuakeStore(index.getCountries());
+			List<EarthquakeMarker> quakes = BenchData.createMarkers(features, index, store);
+
+			ImpactEdges edges = null;
+			long build = Long.MAX_VALUE;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				edges = new ImpactEdges(store, cityIndex);
+				build = Math.min(build, System.nanoTime() - start);
+			}
+
+			// looking up every quake's cities, as clicking each quake would
+			long lookup = Long.MAX_VALUE, query = Long.MAX_VALUE;
+			long sum = 0;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				for (int row = 0; row < store.size(); row++) {
+					for (int i = 0; i < edges.count(row); i++) {
+						sum += edges.getCity(row, i);
+					}
+				}
+				lookup = Math.min(lookup, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (int row = 0; row < store.size(); row++) {
+					for (int i : cityIndex.within(store.getLocation(row), store.getThreatRadius(row))) {
+						sum -= i;
+					}
+				}
+				query = Math.min(query, System.nanoTime() - start);
+			}
+
+			int wrong = 0;
+			int step = Math.max(1, quakes.size() / 2000);
+			for (int q = 0; q < quakes.size(); q += step) {
+				EarthquakeMarker quake = quakes.get(q);
+				List<Integer> expected = new ArrayList<Integer>();
+				for (int i = 0; i < cities.size(); i++) {
+					if (quake.getDistanceTo(cities.get(i).getLocation()) <= quake.threatCircle()) {
+						expected.add(i);
+					}
+				}
+				int[] found = edges.getCities(quake.getRow());
+				boolean same = found.length == expected.size();
+				for (int i = 0; same && i < found.length; i++) {
+					same = found[i] == expected.get(i);
+				}
+				if (!same) {
+					wrong++;
+				}
+			}
+
+			boolean extended = matchesExtended(features, index, cityIndex, edges);
+			boolean compacted = matchesCompacted(features, index, cities, cityIndex);
+
+			BenchData.check(wrong == 0);
+			System.out.printf("%7d quakes, %d edges (%d KB): built in %.2f ms; all cities looked up in %.2f ms, "
+					+ "queried in %.2f ms; %d of %d sampled quakes differ from a loop over the cities, "
+					+ "%s, %s, checksum %d%n",
+					quakes.size(), edges.size(), (4L * (edges.size() + edges.rows() + 1)) >> 10,
+					build / 1e6, lookup / 1e6, query / 1e6, wrong, (quakes.size() + step - 1) / step,
+					BenchData.check(extended) ? "extended table equal" : "EXTENDED TABLE DIFFERS",
+					BenchData.check(compacted) ? "compacted table and store equal" : "COMPACTED TABLE OR STORE DIFFERS",
+					sum);
+		}
+		BenchData.exitOnFailure();
+	}
+
+	// builds a table over the first half of the quakes, adds the rest and
+	// compares it with the table built at once
+	private static boolean matchesExtended(List<PointFeature> features, CountryIndex index,
+			ProximityIndex cityIndex, ImpactEdges edges) {
+		int half = features.size() / 2;
+		QuakeStore store = new QuakeStore(index.getCountries());
+		BenchData.createMarkers(features.subList(0, half), index, store);
+		ImpactEdges extended = new ImpactEdges(store, cityIndex);
+		BenchData.createMarkers(features.subList(half, features.size()), index, store);
+		extended.extend();
+		if (extended.size() != edges.size() || extended.rows() != edges.rows()) {
+			return false;
+		}
+		for (int row = 0; row < store.size(); row++) {
+			if (!Arrays.equals(extended.getCities(row), edges.getCities(row))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// removes two of every three quakes of the first half, appends the rest
+	// and compacts, then compares the table with one built from the
+	// compacted store, and the store's rows with the quakes kept
+	private static boolean matchesCompacted(List<PointFeature> features, CountryIndex index,
+			List<Marker> cities, ProximityIndex cityIndex) {
+		int half = features.size() / 2;
+		QuakeStore store = new QuakeStore(index.getCountries());
+		List<Marker> quakes = new ArrayList<Marker>(BenchData.createMarkers(features.subList(0, half), index, store));
+		ImpactEdges edges = new ImpactEdges(store, cityIndex);
+		CityThreatTable threats = new CityThreatTable(cities, cityIndex);
+		threats.add(quakes);
+		List<String> titles = new ArrayList<String>();
+		List<Double> radii = new ArrayList<Double>();
+		List<Marker> removed = new ArrayList<Marker>();
+		for (int row = 0; row < half; row++) {
+			if (row % 3 != 0) {
+				store.remove(row);
+				removed.add(quakes.get(row));
+			}
+		}
+		quakes.removeAll(removed);
+		List<EarthquakeMarker> added = BenchData.createMarkers(features.subList(half, features.size()), index, store);
+		quakes.addAll(added);
+		threats.update(removed, added, quakes, ProximityIndex.ofThreatCircles(quakes));
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row)) {
+				titles.add(store.getTitle(row));
+				radii.add(store.getThreatRadius(row));
+			}
+		}
+		int[] newRows = store.compact();
+		edges.compact(newRows);
+		for (Marker m : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			quake.setRow(newRows[quake.getRow()]);
+		}
+		CityThreatTable rebuilt = new CityThreatTable(cities, cityIndex);
+		rebuilt.add(quakes);
+		if (!csv(threats).equals(csv(rebuilt))) {
+			return false;
+		}
+
+		ImpactEdges built = new ImpactEdges(store, cityIndex);
+		if (store.size() != titles.size() || store.liveCount() != store.size() ||
+				edges.size() != built.size() || edges.rows() != built.rows()) {
+			return false;
+		}
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.getTitle(row).equals(titles.get(row)) || store.getThreatRadius(row) != radii.get(row) ||
+					!Arrays.equals(edges.getCities(row), built.getCities(row))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String csv(CityThreatTable threats) {
+		StringWriter out = new StringWriter();
+		threats.writeCsv(new PrintWriter(out));
+		return out.toString();
+	}
+}
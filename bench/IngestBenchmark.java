@@ -0,0 +1,84 @@
+import java.io.FileInputStream;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import parsing.QuakeFeedReader;
+
+/** Times the startup ingestion of the sketch (streaming the feed, classifying
+ * every quake and building its marker) with QuakeIngestor on 1 to N threads,
+ * and checks that every thread count builds the same store as one thread.
+ *
+ * Besides the bundled feed, the bundled quakes are repeated at jittered
+ * locations to get a feed large enough for classification to dominate.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java IngestBenchmark [dataDir] [maxThreads] [copies] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class IngestBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) :
+			Runtime.getRuntime().availableProcessors();
+		int copies = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+		int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		List<PointFeature> large = BenchData.scaleQuakes(feed, copies);
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors available");
+
+		// the sequential loop the sketch used to run
+		QuakeStore reference = new QuakeStore(index.getCountryNames());
+		BenchData.createMarkers(feed, index, reference);
+		QuakeStore referenceLarge = new QuakeStore(index.getCountryNames());
+		BenchData.createMarkers(large, index, referenceLarge);
+
+		// the first pass only warms up
+		for (int pass = 0; pass < 2; pass++) {
+			for (int threads = 1; threads <= maxThreads; threads++) {
+				QuakeIngestor ingestor = new QuakeIngestor(index, threads);
+				long feedBest = Long.MAX_VALUE, largeBest = Long.MAX_VALUE;
+				QuakeStore store = null, storeLarge = null;
+				for (int r = 0; r < rounds; r++) {
+					long start = System.nanoTime();
+					QuakeFeedReader reader = new QuakeFeedReader(new FileInputStream(data.file("2.5_week.atom")));
+					store = new QuakeStore(index.getCountryNames());
+					ingestor.ingest(reader, store, null);
+					reader.close();
+					feedBest = Math.min(feedBest, System.nanoTime() - start);
+
+					start = System.nanoTime();
+					storeLarge = new QuakeStore(index.getCountryNames());
+					ingestor.ingest(large.iterator(), storeLarge, null);
+					largeBest = Math.min(largeBest, System.nanoTime() - start);
+				}
+				ingestor.shutdown();
+				if (pass == 1) {
+					System.out.printf("%d threads: feed of %d in %.2f ms, %d quakes in %.2f ms, %s%n",
+							threads, store.size(), feedBest / 1e6, storeLarge.size(), largeBest / 1e6,
+							BenchData.check(same(reference, store) && same(referenceLarge, storeLarge)) ?
+									"same as sequential" : "DIFFERS FROM SEQUENTIAL");
+				}
+			}
+		}
+		BenchData.exitOnFailure();
+	}
+
+	private static boolean same(QuakeStore a, QuakeStore b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int row = 0; row < a.size(); row++) {
+			if (a.getCountryId(row) != b.getCountryId(row) || !a.getTitle(row).equals(b.getTitle(row)) ||
+					a.getLat(row) != b.getLat(row) || a.getLon(row) != b.getLon(row)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/** Measures the per-frame hot paths of EarthquakeMarker: sorting with
+ * compareTo and drawing with drawMarker.  Each is compared with the previous
+ * implementation, which parsed the magnitude, depth and radius from the
+ * property map on every call.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true MarkerBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class MarkerBenchmark {
+
+	// the comparison EarthquakeMarker.compareTo used to make, on the
+	// property maps the markers used to copy from the features
+	private static final Comparator<PointFeature> PARSING_COMPARATOR = new Comparator<PointFeature>() {
+		public int compare(PointFeature a, PointFeature b) {
+			float magA = Float.parseFloat(a.getProperty("magnitude").toString());
+			float magB = Float.parseFloat(b.getProperty("magnitude").toString());
+			return (magA > magB) ? -1 : ((magA < magB) ? 1 : 0);
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> features = data.loadQuakes("2.5_week.atom");
+		List<EarthquakeMarker> markers = BenchData.createMarkers(features, index);
+
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(650, 600);
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			boolean report = warmup == 1;
+
+			// sorting: both comparators see the same shuffled input each round
+			List<PointFeature> featureList = new ArrayList<PointFeature>(features);
+			List<EarthquakeMarker> list = new ArrayList<EarthquakeMarker>(markers);
+			long parsingTime = 0, parsingBytes = 0, typedTime = 0, typedBytes = 0;
+			for (int r = 0; r < rounds; r++) {
+				Collections.shuffle(featureList, new java.util.Random(r));
+				Collections.shuffle(list, new java.util.Random(r));
+				List<PointFeature> featureCopy = new ArrayList<PointFeature>(featureList);
+				long bytes = BenchData.allocatedBytes();
+				long start = System.nanoTime();
+				Collections.sort(featureCopy, PARSING_COMPARATOR);
+				parsingTime += System.nanoTime() - start;
+				parsingBytes += BenchData.allocatedBytes() - bytes;
+
+				List<EarthquakeMarker> copy = new ArrayList<EarthquakeMarker>(list);
+				bytes = BenchData.allocatedBytes();
+				start = System.nanoTime();
+				Collections.sort(copy);
+				typedTime += System.nanoTime() - start;
+				typedBytes += BenchData.allocatedBytes() - bytes;
+			}
+			if (report) {
+				System.out.printf("sort %d markers: parsing %.1f us / %d B, typed %.1f us / %d B%n",
+						markers.size(), parsingTime / 1e3 / rounds, parsingBytes / rounds,
+						typedTime / 1e3 / rounds, typedBytes / rounds);
+			}
+
+			// drawing every marker once, as in one frame
+			pg.beginDraw();
+			long bytes = BenchData.allocatedBytes();
+			long start = System.nanoTime();
+			for (int r = 0; r < rounds; r++) {
+				for (EarthquakeMarker m : markers) {
+					m.drawMarker(pg, 325, 300);
+				}
+			}
+			long drawTime = System.nanoTime() - start;
+			long drawBytes = BenchData.allocatedBytes() - bytes;
+			pg.endDraw();
+			if (report) {
+				System.out.printf("drawMarker frame of %d markers: %.1f us, %d B allocated%n",
+						markers.size(), drawTime / 1e3 / rounds, drawBytes / rounds);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+import java.awt.Font;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/** Measures what FrameMetrics costs: frames drawing every quake marker
+ * through CommonMarker.draw are timed with the metrics disabled and enabled.
+ * The enabled run logs its windows to a temporary CSV file, which is printed,
+ * and the overlay is drawn once at its end.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true MetricsBenchmark [dataDir] [frames]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class MetricsBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int frames = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<EarthquakeMarker> quakes = BenchData.createMarkers(data.loadQuakes("2.5_week.atom"), index);
+		// some markers are skipped, as while a city is clicked
+		for (int i = 0; i < quakes.size(); i += 3) {
+			quakes.get(i).setHidden(true);
+		}
+
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(650, 600);
+		pg.beginDraw();
+		// a sketch has a default font, a bare renderer does not
+		char[] charset = new char[95];
+		for (int c = 0; c < charset.length; c++) {
+			charset[c] = (char) (' ' + c);
+		}
+		PFont font = new PFont(new Font("SansSerif", Font.PLAIN, 12), true, charset);
+		font.setNative(null);
+		pg.textFont(font);
+
+		File log = File.createTempFile("frame-metrics", ".csv");
+		log.deleteOnExit();
+		FrameMetrics metrics = new FrameMetrics(0.25f, log.getPath());
+
+		for (int pass = 0; pass < 2; pass++) {
+			long off = drawFrames(pg, quakes, metrics, frames);
+			metrics.setEnabled(true);
+			CommonMarker.setMetrics(metrics);
+			long on = drawFrames(pg, quakes, metrics, frames);
+			long start = System.nanoTime();
+			metrics.draw(pg, 5, 5);
+			long overlay = System.nanoTime() - start;
+			metrics.setEnabled(false);
+			CommonMarker.setMetrics(null);
+			if (pass == 1) {
+				System.out.printf("%d markers, %d frames: %.1f us per frame without metrics, %.1f us with, "
+						+ "overlay %.1f us%n", quakes.size(), frames, off / 1e3 / frames, on / 1e3 / frames,
+						overlay / 1e3);
+			}
+		}
+		pg.endDraw();
+		metrics.close();
+		for (String line : Files.readAllLines(log.toPath())) {
+			System.out.println(line);
+		}
+	}
+
+	private static long drawFrames(PGraphics pg, List<EarthquakeMarker> quakes, FrameMetrics metrics, int frames) {
+		long start = System.nanoTime();
+		for (int f = 0; f < frames; f++) {
+			metrics.beginFrame();
+			metrics.begin(FrameMetrics.MAP);
+			for (EarthquakeMarker quake : quakes) {
+				quake.draw(pg, 325, 300);
+			}
+			metrics.end(FrameMetrics.MAP);
+			metrics.endFrame();
+		}
+		return System.nanoTime() - start;
+	}
+}
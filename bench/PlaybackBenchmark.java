@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/** Measures the frame time of QuakePlayback on archives of growing length,
+ * against selecting each frame's quakes by testing every marker's time.
+ *
+ * The bundled week of quakes is repeated week after week into archives of
+ * 1, 100 and 3000 weeks, and a one-day window is played at six hours per
+ * second for a number of 60 Hz frames, drawing the quakes of every frame.
+ * The quakes QuakePlayback activates, and those isActive reports, are
+ * checked against the scan.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java -Djava.awt.headless=true PlaybackBenchmark [dataDir] [frames]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class PlaybackBenchmark {
+
+	private static final long HOUR = 3600 * 1000L;
+	private static final long WEEK = 7 * 24 * HOUR;
+	private static final int[] WEEKS = {1, 100, 3000};
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int frames = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		int[] countryIds = new int[feed.size()];
+		for (int i = 0; i < countryIds.length; i++) {
+			countryIds[i] = index.findCountryId(feed.get(i).getLocation());
+		}
+
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setSize(650, 600);
+		pg.beginDraw();
+
+		for (int weeks : WEEKS) {
+			QuakeStore store = new QuakeStore(index.getCountries());
+			List<Marker> markers = new ArrayList<Marker>();
+			for (int w = 0; w < weeks; w++) {
+				for (int i = 0; i < feed.size(); i++) {
+					PointFeature quake = feed.get(i);
+					long time = (Long) quake.getProperty("time");
+					quake.putProperty("time", time + w*WEEK);
+					markers.add(EarthquakeMarker.create(store, quake, countryIds[i]));
+					quake.putProperty("time", time);
+				}
+			}
+
+			long start = System.nanoTime();
+			QuakePlayback playback = new QuakePlayback(store, markers, 24*HOUR, 6*HOUR);
+			long buildNanos = System.nanoTime() - start;
+			playback.togglePlaying();
+
+			long playbackNanos = 0, scanNanos = 0;
+			int drawn = 0, mismatches = 0;
+			for (int f = 0; f < frames; f++) {
+				start = System.nanoTime();
+				playback.update(f * 1000L / 60);
+				for (Marker m : playback.getActiveMarkers()) {
+					((EarthquakeMarker) m).draw(pg, 325, 300);
+				}
+				playbackNanos += System.nanoTime() - start;
+				drawn += playback.getActiveMarkers().size();
+
+				// every marker tested against the window
+				long to = playback.getPlayhead();
+				start = System.nanoTime();
+				List<Marker> inWindow = new ArrayList<Marker>();
+				for (Marker m : markers) {
+					long time = ((EarthquakeMarker) m).getTime();
+					if (time >= to - 24*HOUR && time < to) {
+						inWindow.add(m);
+						((EarthquakeMarker) m).draw(pg, 325, 300);
+					}
+				}
+				scanNanos += System.nanoTime() - start;
+				if (f % 100 == 0) {
+					HashSet<Marker> expected = new HashSet<Marker>(inWindow);
+					boolean same = expected.equals(new HashSet<Marker>(playback.getActiveMarkers()));
+					for (int i = 0; same && i < markers.size(); i++) {
+						Marker m = markers.get(i);
+						same = playback.isActive((EarthquakeMarker) m) == expected.contains(m);
+					}
+					if (!same) {
+						mismatches++;
+					}
+				}
+				if (!playback.isPlaying()) {
+					playback.togglePlaying();
+				}
+			}
+			BenchData.check(mismatches == 0);
+			System.out.printf("%8d quakes: built in %.1f ms; per frame %.3f ms with QuakePlayback, "
+					+ "%.3f ms scanning, %.0f quakes drawn, %d sampled frames differ%n", store.size(),
+					buildNanos / 1e6, playbackNanos / 1e6 / frames, scanNanos / 1e6 / frames,
+					(double) drawn / frames, mismatches);
+		}
+		pg.endDraw();
+		BenchData.exitOnFailure();
+	}
+}
@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Checks ProximityIndex against the brute-force getDistanceTo scans and
+ * times both, for the two threat-circle queries of the sketch.
+ *
+ * Besides the bundled cities and quakes, the check runs on synthetic points
+ * clustered around the poles and along the antimeridian, where the query
+ * boxes wrap.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java ProximityIndexBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ProximityIndexBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex countries = new CountryIndex(data.loadCountryMarkers());
+		List<Marker> cities = new ArrayList<Marker>();
+		for (Feature city : data.loadGeoJSON("city-data.json")) {
+			cities.add(new CityMarker(city));
+		}
+		List<EarthquakeMarker> quakes = BenchData.createMarkers(data.loadQuakes("2.5_week.atom"), countries);
+
+		verify("bundled data", cities, quakes);
+		verify("poles", syntheticCities(new Random(1), 2000, true), quakes);
+		verify("antimeridian", syntheticCities(new Random(2), 2000, false), quakes);
+
+		ProximityIndex cityIndex = ProximityIndex.ofMarkers(cities);
+		ProximityIndex quakeIndex = ProximityIndex.ofThreatCircles(quakes);
+		long brute = Long.MAX_VALUE, indexed = Long.MAX_VALUE;
+		int sink = 0;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			for (Marker city : cities) {
+				sink += bruteCovering(quakes, city.getLocation()).length;
+			}
+			for (EarthquakeMarker quake : quakes) {
+				sink += bruteWithin(cities, quake.getLocation(), quake.threatCircle()).length;
+			}
+			brute = Math.min(brute, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (Marker city : cities) {
+				sink += quakeIndex.covering(city.getLocation()).length;
+			}
+			for (EarthquakeMarker quake : quakes) {
+				sink += cityIndex.within(quake.getLocation(), quake.threatCircle()).length;
+			}
+			indexed = Math.min(indexed, System.nanoTime() - start);
+		}
+		System.out.printf("all threat queries (%d cities, %d quakes): brute force %.3f ms, indexed %.3f ms (%d)%n",
+				cities.size(), quakes.size(), brute / 1e6, indexed / 1e6, sink);
+		BenchData.exitOnFailure();
+	}
+
+	private static void verify(String name, List<Marker> cities, List<EarthquakeMarker> quakes) {
+		ProximityIndex cityIndex = ProximityIndex.ofMarkers(cities);
+		ProximityIndex quakeIndex = ProximityIndex.ofThreatCircles(quakes);
+		int mismatches = 0;
+		for (Marker city : cities) {
+			if (!Arrays.equals(quakeIndex.covering(city.getLocation()),
+					bruteCovering(quakes, city.getLocation()))) {
+				mismatches++;
+			}
+		}
+		Random random = new Random(3);
+		for (EarthquakeMarker quake : quakes) {
+			if (!Arrays.equals(cityIndex.within(quake.getLocation(), quake.threatCircle()),
+					bruteWithin(cities, quake.getLocation(), quake.threatCircle()))) {
+				mismatches++;
+			}
+			// and a wide range of radii, up to the whole globe
+			double radius = 25000 * Math.pow(random.nextDouble(), 3);
+			if (!Arrays.equals(cityIndex.within(quake.getLocation(), radius),
+					bruteWithin(cities, quake.getLocation(), radius))) {
+				mismatches++;
+			}
+		}
+		BenchData.check(mismatches == 0);
+		System.out.println(name + ": " + mismatches + " mismatches");
+	}
+
+	// the scans the sketch used to do
+	private static int[] bruteWithin(List<Marker> markers, Location center, double radius) {
+		List<Integer> hits = new ArrayList<Integer>();
+		for (int i = 0; i < markers.size(); i++) {
+			if (markers.get(i).getDistanceTo(center) <= radius) {
+				hits.add(i);
+			}
+		}
+		return toArray(hits);
+	}
+
+	private static int[] bruteCovering(List<EarthquakeMarker> quakes, Location location) {
+		List<Integer> hits = new ArrayList<Integer>();
+		for (int i = 0; i < quakes.size(); i++) {
+			if (quakes.get(i).getDistanceTo(location) <= quakes.get(i).threatCircle()) {
+				hits.add(i);
+			}
+		}
+		return toArray(hits);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	// cities crowded near the poles, or within a few degrees of +-180
+	private static List<Marker> syntheticCities(Random random, int n, boolean poles) {
+		List<Marker> cities = new ArrayList<Marker>();
+		for (int i = 0; i < n; i++) {
+			float lat, lon;
+			if (poles) {
+				lat = (float) ((random.nextBoolean() ? 1 : -1) * (80 + 10 * random.nextDouble()));
+				lon = (float) (360 * random.nextDouble() - 180);
+			}
+			else {
+				lat = (float) (180 * random.nextDouble() - 90);
+				lon = (float) ((random.nextBoolean() ? 180 : -180) - 5 * (random.nextDouble() - 0.5));
+			}
+			cities.add(new CityMarker(new Location(lat, lon)));
+		}
+		return cities;
+	}
+}
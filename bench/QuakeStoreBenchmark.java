@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** Compares the heap used per earthquake by the feed's PointFeatures, which
+ * the markers used to keep through their property maps, with the heap used
+ * by QuakeStore and the markers backed by it.
+ *
+ * The bundled feed is repeated with distinct titles to reach the requested
+ * number of events, so interning does not flatter the store.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java QuakeStoreBenchmark [dataDir] [copies]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeStoreBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		int[] countryIds = new int[feed.size()];
+		for (int i = 0; i < feed.size(); i++) {
+			countryIds[i] = index.findCountryId(feed.get(i).getLocation());
+		}
+		int events = copies * feed.size();
+		List<String> countryNames = index.getCountryNames();
+
+		long base = usedHeap();
+		List<PointFeature> features = new ArrayList<PointFeature>();
+		for (int c = 0; c < copies; c++) {
+			for (int i = 0; i < feed.size(); i++) {
+				features.add(copy(feed.get(i), c, countryIds[i], countryNames));
+			}
+		}
+		long featureBytes = usedHeap() - base;
+
+		// the store, then the markers on top of it
+		base = usedHeap();
+		QuakeStore store = new QuakeStore(index.getCountryNames());
+		for (int k = 0; k < features.size(); k++) {
+			store.add(features.get(k), countryIds[k % feed.size()]);
+		}
+		long storeBytes = usedHeap() - base;
+
+		base = usedHeap();
+		List<EarthquakeMarker> markers = new ArrayList<EarthquakeMarker>();
+		for (int row = 0; row < store.size(); row++) {
+			markers.add(store.isOnLand(row) ? new LandQuakeMarker(store, row) : new OceanQuakeMarker(store, row));
+		}
+		long markerBytes = usedHeap() - base;
+
+		System.out.printf("%d events%n", events);
+		System.out.printf("  PointFeature with property map: %d bytes per event%n", featureBytes / events);
+		System.out.printf("  QuakeStore row:                 %d bytes per event%n", storeBytes / events);
+		System.out.printf("  store-backed marker:            %d bytes per event%n", markerBytes / events);
+		System.out.printf("  old marker retained (feature + marker) vs new (row + marker): %d vs %d bytes%n",
+				(featureBytes + markerBytes) / events, (storeBytes + markerBytes) / events);
+
+		// keep everything reachable until measured
+		if (features.size() + markers.size() + store.size() < 0) {
+			System.out.println();
+		}
+	}
+
+	// an independent copy of a parsed quake, with its own strings and boxes,
+	// as a longer feed would have produced
+	private static PointFeature copy(PointFeature quake, int c, int countryId, List<String> countryNames) {
+		PointFeature copy = new PointFeature(new Location(quake.getLocation().getLat(), quake.getLocation().getLon()));
+		HashMap<String, Object> properties = new HashMap<String, Object>();
+		properties.put("title", quake.getStringProperty("title") + " #" + c);
+		properties.put("magnitude", Float.valueOf(quake.getProperty("magnitude").toString()));
+		properties.put("depth", Float.valueOf(quake.getProperty("depth").toString()));
+		if (quake.getProperty("age") != null) {
+			properties.put("age", new String(quake.getStringProperty("age")));
+		}
+		// what the old marker constructor and isLand added to the map; the
+		// country name was shared with the country marker
+		properties.put("radius", 2*Float.parseFloat(quake.getProperty("magnitude").toString()));
+		if (countryId != QuakeStore.OCEAN) {
+			properties.put("country", countryNames.get(countryId));
+		}
+		copy.setProperties(properties);
+		return copy;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
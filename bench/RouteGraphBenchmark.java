@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** Times building a RouteGraph from the bundled airports and routes, and
+ * finding the routes touching the airports inside every quake's threat
+ * circle with it, compared with joining every route to its airports through
+ * a HashMap and testing both ends.  Both must find the same routes.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java RouteGraphBenchmark [dataDir] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class RouteGraphBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		BenchData data = new BenchData(dataDir);
+		List<PointFeature> airports = data.loadAirports();
+		List<ShapeFeature> routes = data.loadRoutes();
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<EarthquakeMarker> quakes = BenchData.createMarkers(data.loadQuakes("2.5_week.atom"), index);
+
+		for (int warmup = 0; warmup < 2; warmup++) {
+			long buildBest = Long.MAX_VALUE, graphBest = Long.MAX_VALUE, scanBest = Long.MAX_VALUE;
+			RouteGraph graph = null;
+			List<int[]> graphHits = null, scanHits = null;
+			for (int r = 0; r < rounds; r++) {
+				long start = System.nanoTime();
+				graph = new RouteGraph(airports, routes);
+				buildBest = Math.min(buildBest, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				graphHits = new ArrayList<int[]>();
+				for (EarthquakeMarker quake : quakes) {
+					graphHits.add(graph.getRoutesNear(quake.getLocation(), quake.threatCircle()));
+				}
+				graphBest = Math.min(graphBest, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				scanHits = scanRoutesNear(airports, routes, quakes);
+				scanBest = Math.min(scanBest, System.nanoTime() - start);
+			}
+			if (warmup == 1) {
+				long affected = 0;
+				boolean same = true;
+				for (int q = 0; q < quakes.size(); q++) {
+					affected += graphHits.get(q).length;
+					same &= java.util.Arrays.equals(graphHits.get(q), scanHits.get(q));
+				}
+				System.out.printf("%d airports, %d routes (%d to unknown airports): graph built in %.2f ms%n",
+						graph.size(), graph.getRouteCount(), graph.getSkippedRoutes(), buildBest / 1e6);
+				System.out.printf("routes near %d quakes (%d in all): graph %.2f ms, route scan %.2f ms, %s%n",
+						quakes.size(), affected, graphBest / 1e6, scanBest / 1e6,
+						BenchData.check(same) ? "same routes" : "ROUTES DIFFER");
+			}
+		}
+		BenchData.exitOnFailure();
+	}
+
+	// joins each route to its airports and tests the distance of both ends,
+	// numbering the routes the way RouteGraph does
+	private static List<int[]> scanRoutesNear(List<PointFeature> airports, List<ShapeFeature> routes,
+			List<EarthquakeMarker> quakes) {
+		HashMap<String, Location> locations = new HashMap<String, Location>();
+		for (PointFeature airport : airports) {
+			locations.put(airport.getId(), airport.getLocation());
+		}
+		List<int[]> hits = new ArrayList<int[]>();
+		for (EarthquakeMarker quake : quakes) {
+			List<Integer> near = new ArrayList<Integer>();
+			int r = 0;
+			for (ShapeFeature route : routes) {
+				Location source = locations.get(route.getStringProperty("source"));
+				Location destination = locations.get(route.getStringProperty("destination"));
+				if (source == null || destination == null) {
+					continue;
+				}
+				if (quake.getDistanceTo(source) <= quake.threatCircle() ||
+						quake.getDistanceTo(destination) <= quake.threatCircle()) {
+					near.add(r);
+				}
+				r++;
+			}
+			int[] values = new int[near.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = near.get(i);
+			}
+			hits.add(values);
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,175 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+import parsing.QuakeFeedReader;
+
+/** Times the data loading of the sketch's startup from the source files
+ * (cold) and from a Snapshot (warm), and checks that both give the same
+ * countries, cities and classified quakes.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java SnapshotBenchmark [dataDir] [feed] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class SnapshotBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		String feed = (args.length > 1) ? args[1] : "2.5_week.atom";
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		BenchData data = new BenchData(dataDir);
+		File countryFile = data.file("countries.geo.json");
+		File cityFile = data.file("city-data.json");
+		File feedFile = data.file(feed);
+		File snapshotFile = File.createTempFile("earthquake-map", ".snapshot");
+		snapshotFile.deleteOnExit();
+		Snapshot.Sources sources = Snapshot.Sources.of(countryFile, cityFile, feedFile);
+
+		long coldBest = Long.MAX_VALUE, warmBest = Long.MAX_VALUE;
+		Loaded cold = null, warm = null;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			cold = new Loaded();
+			cold.countries = data.loadGeoJSON(countryFile.getName());
+			cold.countryMarkers = MapUtils.createSimpleMarkers(cold.countries);
+			CountryIndex index = new CountryIndex(cold.countryMarkers);
+			cold.cities = data.loadGeoJSON(cityFile.getName());
+			cold.store = new QuakeStore(index.getCountryNames());
+			QuakeFeedReader reader = new QuakeFeedReader(new FileInputStream(feedFile));
+			while (reader.hasNext()) {
+				PointFeature quake = reader.next();
+				cold.quakes.add(quake);
+				cold.updated.add(reader.getUpdated());
+				EarthquakeMarker.create(cold.store, quake, index.findCountryId(quake.getLocation()));
+			}
+			reader.close();
+			coldBest = Math.min(coldBest, System.nanoTime() - start);
+
+			if (r == 0) {
+				int[] countryIds = new int[cold.store.size()];
+				for (int row = 0; row < countryIds.length; row++) {
+					countryIds[row] = cold.store.getCountryId(row);
+				}
+				new Snapshot(cold.countries, cold.cities, cold.quakes, cold.updated, countryIds)
+					.save(snapshotFile, sources);
+			}
+
+			start = System.nanoTime();
+			Snapshot snapshot = Snapshot.load(snapshotFile, sources);
+			if (snapshot == null) {
+				throw new IllegalStateException("snapshot was not loaded");
+			}
+			warm = new Loaded();
+			warm.countries = snapshot.countries;
+			warm.countryMarkers = MapUtils.createSimpleMarkers(warm.countries);
+			index = new CountryIndex(warm.countryMarkers);
+			warm.cities = snapshot.cities;
+			warm.store = new QuakeStore(index.getCountryNames());
+			for (int i = 0; i < snapshot.quakes.size(); i++) {
+				EarthquakeMarker.create(warm.store, snapshot.quakes.get(i), snapshot.quakeCountryIds[i]);
+			}
+			warmBest = Math.min(warmBest, System.nanoTime() - start);
+		}
+
+		System.out.printf("cold start %.2f ms, warm start %.2f ms, snapshot of %d bytes: %s%n",
+				coldBest / 1e6, warmBest / 1e6, snapshotFile.length(),
+				BenchData.check(cold.sameAs(warm)) ? "same data" : "DATA DIFFERS");
+
+		// a changed source must not be served from the snapshot
+		File copy = File.createTempFile("feed", ".atom");
+		copy.deleteOnExit();
+		java.nio.file.Files.copy(feedFile.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		boolean changedUsed = Snapshot.load(snapshotFile, Snapshot.Sources.of(countryFile, cityFile, copy)) != null;
+		BenchData.check(!changedUsed);
+		System.out.println("snapshot used for a different feed file: " + changedUsed);
+		boolean remoteUsed = Snapshot.load(snapshotFile, Snapshot.Sources.of(countryFile, cityFile, null)) != null;
+		BenchData.check(!remoteUsed);
+		System.out.println("snapshot used without a local feed: " + remoteUsed);
+
+		// nor a damaged snapshot
+		byte[] bytes = java.nio.file.Files.readAllBytes(snapshotFile.toPath());
+		bytes[bytes.length / 2] ^= 1;
+		java.nio.file.Files.write(snapshotFile.toPath(), bytes);
+		boolean damagedUsed = Snapshot.load(snapshotFile, sources) != null;
+		BenchData.check(!damagedUsed);
+		System.out.println("damaged snapshot used: " + damagedUsed);
+
+		// nor one of an older version, which is then replaced
+		bytes[bytes.length / 2] ^= 1;
+		bytes[7] = (byte) (Snapshot.VERSION - 1);
+		java.nio.file.Files.write(snapshotFile.toPath(), bytes);
+		boolean oldUsed = Snapshot.load(snapshotFile, sources) != null;
+		int[] countryIds = new int[cold.store.size()];
+		for (int row = 0; row < countryIds.length; row++) {
+			countryIds[row] = cold.store.getCountryId(row);
+		}
+		new Snapshot(cold.countries, cold.cities, cold.quakes, cold.updated, countryIds)
+			.save(snapshotFile, sources);
+		boolean replacedUsed = Snapshot.load(snapshotFile, sources) != null;
+		BenchData.check(!oldUsed && replacedUsed);
+		System.out.println("older snapshot used: " + oldUsed + ", replaced and used: " + replacedUsed);
+		BenchData.exitOnFailure();
+	}
+
+	/** What the sketch has after loading its data */
+	private static class Loaded {
+		List<Feature> countries;
+		List<Marker> countryMarkers;
+		List<Feature> cities;
+		List<PointFeature> quakes = new ArrayList<PointFeature>();
+		List<String> updated = new ArrayList<String>();
+		QuakeStore store;
+
+		boolean sameAs(Loaded other) {
+			if (countryMarkers.size() != other.countryMarkers.size() || cities.size() != other.cities.size() ||
+					store.size() != other.store.size()) {
+				return false;
+			}
+			for (int i = 0; i < countries.size(); i++) {
+				if (!countries.get(i).getProperties().equals(other.countries.get(i).getProperties()) ||
+						!countries.get(i).getId().equals(other.countries.get(i).getId())) {
+					return false;
+				}
+			}
+			for (int i = 0; i < cities.size(); i++) {
+				if (!cities.get(i).getProperties().equals(other.cities.get(i).getProperties()) ||
+						!((PointFeature) cities.get(i)).getLocation().equals(
+								((PointFeature) other.cities.get(i)).getLocation())) {
+					return false;
+				}
+			}
+			for (int row = 0; row < store.size(); row++) {
+				if (store.getCountryId(row) != other.store.getCountryId(row) ||
+						!store.getTitle(row).equals(other.store.getTitle(row)) ||
+						store.getLat(row) != other.store.getLat(row) ||
+						store.getLon(row) != other.store.getLon(row) ||
+						store.getMagnitude(row) != other.store.getMagnitude(row) ||
+						store.getDepth(row) != other.store.getDepth(row) ||
+						store.getAge(row) != other.store.getAge(row)) {
+					return false;
+				}
+			}
+			// and the polygons: every location of the index must give the same country
+			CountryIndex a = new CountryIndex(countryMarkers);
+			CountryIndex b = new CountryIndex(other.countryMarkers);
+			java.util.Random random = new java.util.Random(1);
+			for (int i = 0; i < 20000; i++) {
+				de.fhpotsdam.unfolding.geo.Location loc = new de.fhpotsdam.unfolding.geo.Location(
+						(float) (180 * random.nextDouble() - 90), (float) (360 * random.nextDouble() - 180));
+				if (a.findCountryId(loc) != b.findCountryId(loc)) {
+					return false;
+				}
+			}
+			return a.getNumParts() == b.getNumParts();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import parsing.ParseFeed;
+import parsing.QuakeFeedReader;
+import processing.data.XML;
+
+/** Checks the quake times read from the feed and compares TimeIndex with
+ * scanning every row.
+ *
+ * The times read by the streaming and the DOM parser must agree, and the
+ * age category each time falls in, counted back from the feed's own
+ * <updated>, must be the feed's "Age" term.  Then the bundled week of quakes
+ * is repeated week after week into an archive of about a million quakes; a
+ * one-day window is scrubbed over it an hour at a time, with Window.moveTo
+ * against counting each window with a scan of the store, and the rows the
+ * window holds are checked against the scan.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java TimeIndexBenchmark [dataDir] [weeks]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class TimeIndexBenchmark {
+
+	private static final long HOUR = 3600 * 1000L;
+	private static final long DAY = 24 * HOUR;
+	private static final long WEEK = 7 * DAY;
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int weeks = (args.length > 1) ? Integer.parseInt(args[1]) : 3000;
+
+		BenchData data = new BenchData(dataDir);
+		for (String name : new String[] {"2.5_week.atom", "test1.atom", "test2.atom", "quiz1.atom"}) {
+			String text = data.readText(name);
+			List<PointFeature> dom = ParseFeed.parseEarthquake(XML.parse(text));
+			QuakeFeedReader reader = new QuakeFeedReader(new ByteArrayInputStream(text.getBytes("UTF-8")));
+			long feedTime = ParseFeed.parseTime(null, XML.parse(text).getChild("updated").getContent());
+			int differ = 0, missing = 0, wrongAge = 0;
+			for (PointFeature quake : dom) {
+				PointFeature streamed = reader.next();
+				Object time = quake.getProperty("time");
+				if (time == null) {
+					missing++;
+					continue;
+				}
+				if (!time.equals(streamed.getProperty("time"))) {
+					differ++;
+				}
+				if (ageOf(feedTime - (Long) time) != QuakeAge.fromTerm((String) quake.getProperty("age"))) {
+					wrongAge++;
+				}
+			}
+			reader.close();
+			BenchData.check(missing == 0 && differ == 0 && wrongAge == 0);
+			System.out.printf("%-14s %4d quakes: %d without a time, %d differ between parsers, "
+					+ "%d in another age category than the feed's%n", name, dom.size(), missing, differ, wrongAge);
+		}
+
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		QuakeStore store = new QuakeStore(index.getCountries());
+		for (int w = 0; w < weeks; w++) {
+			for (PointFeature quake : feed) {
+				long time = (Long) quake.getProperty("time");
+				quake.putProperty("time", time + w*WEEK);
+				store.add(quake, QuakeStore.OCEAN);
+				quake.putProperty("time", time);
+			}
+		}
+
+		long start = System.nanoTime();
+		TimeIndex timeIndex = new TimeIndex(store);
+		System.out.printf("%nTimeIndex of %d quakes built in %.1f ms%n", timeIndex.size(),
+				(System.nanoTime() - start) / 1e6);
+
+		// one-day window, moved an hour at a time over the archive
+		final boolean[] inWindow = new boolean[store.size()];
+		TimeIndex.WindowListener listener = new TimeIndex.WindowListener() {
+			public void entered(int row) {
+				inWindow[row] = true;
+			}
+			public void left(int row) {
+				inWindow[row] = false;
+			}
+		};
+		TimeIndex.Window window = timeIndex.window();
+		long first = timeIndex.getFirstTime(), last = timeIndex.getLastTime();
+		long windowNanos = 0, scanNanos = 0;
+		int steps = 0, countMismatches = 0, rowMismatches = 0;
+		for (long from = first - DAY; from <= last; from += HOUR) {
+			start = System.nanoTime();
+			window.moveTo(from, from + DAY, listener);
+			windowNanos += System.nanoTime() - start;
+
+			// the scan is slow, so it only runs on a sample of the steps
+			if (steps % 500 == 0) {
+				start = System.nanoTime();
+				int count = 0;
+				for (int row = 0; row < store.size(); row++) {
+					long time = store.getTime(row);
+					boolean between = time >= from && time < from + DAY;
+					if (between) {
+						count++;
+					}
+					if (between != inWindow[row] || between != window.contains(row)) {
+						rowMismatches++;
+					}
+				}
+				scanNanos += System.nanoTime() - start;
+				if (count != window.size() || count != timeIndex.count(from, from + DAY)) {
+					countMismatches++;
+				}
+			}
+			steps++;
+		}
+		int scans = (steps + 499) / 500;
+		BenchData.check(countMismatches == 0 && rowMismatches == 0);
+		System.out.printf("%d moves of a one-day window: %.4f ms per move, scan %.2f ms per window, "
+				+ "%d counts and %d rows differ%n", steps, windowNanos / 1e6 / steps, scanNanos / 1e6 / scans,
+				countMismatches, rowMismatches);
+		BenchData.exitOnFailure();
+	}
+
+	// the feed's age category of a quake that occurred this long before the feed
+	private static QuakeAge ageOf(long millis) {
+		for (QuakeAge age : QuakeAge.values()) {
+			if (millis <= age.getHours() * HOUR) {
+				return age;
+			}
+		}
+		return QuakeAge.OLDER;
+	}
+}
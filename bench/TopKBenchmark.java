@@ -0,0 +1,117 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/** Compares selecting the top k quakes with TopK against sorting all of
+ * them, for every QuakeKey, on stores of the bundled quakes repeated up to a
+ * million times, and checks QuakeRanking against a full sort after random
+ * additions and removals, also with a k far beyond the number of rows.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java TopKBenchmark [dataDir] [k] [rounds]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class TopKBenchmark {
+
+	private static final int[] COPIES = {1, 100, 3000};
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		List<PointFeature> feed = data.loadQuakes("2.5_week.atom");
+		int[] countryIds = new int[feed.size()];
+		for (int i = 0; i < countryIds.length; i++) {
+			countryIds[i] = index.findCountryId(feed.get(i).getLocation());
+		}
+
+		for (int copies : COPIES) {
+			// the copies have equal keys, which must stay in row order
+			QuakeStore store = new QuakeStore(index.getCountryNames());
+			for (int c = 0; c < copies; c++) {
+				for (int i = 0; i < feed.size(); i++) {
+					store.add(feed.get(i), countryIds[i]);
+				}
+			}
+			for (QuakeKey key : QuakeKey.values()) {
+				long topBest = Long.MAX_VALUE, sortBest = Long.MAX_VALUE;
+				int[] top = null, sorted = null;
+				for (int r = 0; r < rounds; r++) {
+					long start = System.nanoTime();
+					top = store.topRows(k, key);
+					topBest = Math.min(topBest, System.nanoTime() - start);
+
+					start = System.nanoTime();
+					sorted = sortedRows(store, key);
+					sortBest = Math.min(sortBest, System.nanoTime() - start);
+				}
+				System.out.printf("%8d quakes, top %d by %-13s: TopK %8.2f ms, full sort %8.2f ms, %s%n",
+						store.size(), k, key, topBest / 1e6, sortBest / 1e6,
+						BenchData.check(Arrays.equals(top, Arrays.copyOf(sorted, Math.min(k, sorted.length)))) ?
+								"same rows" : "ROWS DIFFER");
+			}
+		}
+
+		// QuakeRanking kept up to date against a full sort of the live rows
+		QuakeStore store = new QuakeStore(index.getCountryNames());
+		QuakeRanking ranking = new QuakeRanking(store, QuakeKey.MAGNITUDE, k);
+		// as many rows as anyone could ask for: only the live rows are held
+		QuakeRanking all = new QuakeRanking(store, QuakeKey.MAGNITUDE, Integer.MAX_VALUE);
+		Random random = new Random(1);
+		int mismatches = 0;
+		for (int step = 0; step < 5000; step++) {
+			if (store.liveCount() > 0 && random.nextInt(3) == 0) {
+				int row = random.nextInt(store.size());
+				if (!store.isRemoved(row)) {
+					store.remove(row);
+					ranking.removed(row);
+					all.removed(row);
+				}
+			}
+			else {
+				int i = random.nextInt(feed.size());
+				int row = store.add(feed.get(i), countryIds[i]);
+				ranking.added(row);
+				all.added(row);
+			}
+			int[] sorted = sortedRows(store, QuakeKey.MAGNITUDE);
+			if (!Arrays.equals(ranking.getRows(), Arrays.copyOf(sorted, Math.min(k, sorted.length))) ||
+					!Arrays.equals(all.getRows(), sorted) ||
+					!Arrays.equals(store.topRows(Integer.MAX_VALUE, QuakeKey.MAGNITUDE), sorted)) {
+				mismatches++;
+			}
+		}
+		BenchData.check(mismatches == 0);
+		System.out.println("QuakeRanking after 5000 random additions and removals: " + mismatches + " mismatches");
+		BenchData.exitOnFailure();
+	}
+
+	// the live rows by decreasing key, equal keys in row order
+	private static int[] sortedRows(final QuakeStore store, final QuakeKey key) {
+		Integer[] order = new Integer[store.liveCount()];
+		int n = 0;
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row)) {
+				order[n++] = row;
+			}
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(key.of(store, b), key.of(store, a));
+			}
+		});
+		int[] rows = new int[n];
+		for (int i = 0; i < n; i++) {
+			rows[i] = order[i];
+		}
+		return rows;
+	}
+}
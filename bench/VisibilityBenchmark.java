@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Compares clicking a quake and clicking again, by calling setHidden and
+ * setClicked on every quake and city as the sketch did, with setting and
+ * clearing the focus of MarkerVisibility sets.  Then times combining a
+ * magnitude and a depth filter against a pass testing both per quake.
+ *
+ * The quakes and cities hidden while a quake is clicked, and the quakes
+ * let through by the filters, must be the same both ways.
+ *
+ * Run from the project root with src, bench and lib/*.jar on the classpath:
+ *   java VisibilityBenchmark [dataDir] [copies] [clicks]
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class VisibilityBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dataDir = (args.length > 0) ? args[0] : "data";
+		int copies = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int clicks = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+		BenchData data = new BenchData(dataDir);
+		CountryIndex index = new CountryIndex(data.loadCountryMarkers());
+		QuakeStore store = new QuakeStore(index.getCountries());
+		List<Marker> quakes = new ArrayList<Marker>(BenchData.createMarkers(
+				BenchData.scaleQuakes(data.loadQuakes("2.5_week.atom"), copies), index, store));
+		List<Marker> cities = new ArrayList<Marker>();
+		for (Feature city : data.loadGeoJSON("city-data.json")) {
+			cities.add(new CityMarker(city));
+		}
+		ImpactEdges edges = new ImpactEdges(store, ProximityIndex.ofMarkers(cities));
+
+		// the hidden flags of every click, the old way; the second pass is
+		// timed and the third records the flags
+		int step = Math.max(1, quakes.size() / clicks);
+		List<boolean[]> expected = new ArrayList<boolean[]>();
+		long loops = 0;
+		for (int pass = 0; pass < 3; pass++) {
+			expected.clear();
+			long start = System.nanoTime();
+			for (int q = 0; q < quakes.size(); q += step) {
+				EarthquakeMarker hit = (EarthquakeMarker) quakes.get(q);
+				hideAllBut(quakes, hit);
+				hideAllBut(cities, hit);
+				for (int i : edges.getCities(hit.getRow())) {
+					cities.get(i).setHidden(false);
+				}
+				if (pass == 2) {
+					expected.add(hiddenFlags(quakes, cities));
+				}
+				for (Marker m : quakes) {
+					m.setHidden(false);
+					((CommonMarker) m).setClicked(false);
+				}
+				for (Marker m : cities) {
+					m.setHidden(false);
+					((CommonMarker) m).setClicked(false);
+				}
+			}
+			if (pass == 1) {
+				loops = System.nanoTime() - start;
+			}
+		}
+
+		MarkerVisibility quakeVisibility = new MarkerVisibility(store.size());
+		for (Marker m : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			quake.setVisibility(quakeVisibility, quake.getRow());
+		}
+		MarkerVisibility cityVisibility = new MarkerVisibility(cities.size());
+		for (int i = 0; i < cities.size(); i++) {
+			((CommonMarker) cities.get(i)).setVisibility(cityVisibility, i);
+		}
+		int differ = 0;
+		long bitsets = 0;
+		for (int pass = 0; pass < 3; pass++) {
+			long start = System.nanoTime();
+			int click = 0;
+			for (int q = 0; q < quakes.size(); q += step) {
+				EarthquakeMarker hit = (EarthquakeMarker) quakes.get(q);
+				hit.setClicked(true);
+				BitSet quakeFocus = new BitSet();
+				quakeFocus.set(hit.getRow());
+				BitSet cityFocus = new BitSet();
+				for (int i : edges.getCities(hit.getRow())) {
+					cityFocus.set(i);
+				}
+				quakeVisibility.setFocus(quakeFocus);
+				cityVisibility.setFocus(cityFocus);
+				if (pass == 2) {
+					boolean[] flags = hiddenFlags(quakes, cities);
+					boolean[] old = expected.get(click);
+					for (int i = 0; i < flags.length; i++) {
+						if (flags[i] != old[i]) {
+							differ++;
+						}
+					}
+				}
+				hit.setClicked(false);
+				quakeVisibility.clearFocus();
+				cityVisibility.clearFocus();
+				click++;
+			}
+			if (pass == 1) {
+				bitsets = System.nanoTime() - start;
+			}
+		}
+		int clicked = expected.size();
+		BenchData.check(differ == 0);
+		System.out.printf("%d quakes, %d cities, %d clicks: %.3f ms per click setting every marker, "
+				+ "%.3f ms with bitsets, %d flags differ%n",
+				quakes.size(), cities.size(), clicked, loops / 1e6 / clicked, bitsets / 1e6 / clicked, differ);
+
+		// magnitude 4 or more, and shallow or deep
+		int mask = (1 << QuakeAggregates.SHALLOW) | (1 << QuakeAggregates.DEEP);
+		long pass = Long.MAX_VALUE, combined = Long.MAX_VALUE;
+		boolean[] passed = new boolean[store.size()];
+		for (int r = 0; r < 10; r++) {
+			long start = System.nanoTime();
+			for (int row = 0; row < store.size(); row++) {
+				passed[row] = store.getMagnitude(row) >= 4 &&
+						(mask & (1 << QuakeAggregates.depthClass(store.getDepth(row)))) != 0;
+			}
+			pass = Math.min(pass, System.nanoTime() - start);
+		}
+		BitSet magnitude = QuakeFilters.magnitudeAtLeast(store, 4);
+		BitSet depth = QuakeFilters.depthClasses(store, mask);
+		for (int r = 0; r < 10; r++) {
+			long start = System.nanoTime();
+			quakeVisibility.setFilter("magnitude", magnitude);
+			quakeVisibility.setFilter("depth", depth);
+			combined = Math.min(combined, System.nanoTime() - start);
+		}
+		int wrong = 0, shown = 0;
+		for (int row = 0; row < store.size(); row++) {
+			if (passed[row] != quakeVisibility.isVisible(row)) {
+				wrong++;
+			}
+			if (passed[row]) {
+				shown++;
+			}
+		}
+		BenchData.check(wrong == 0);
+		System.out.printf("magnitude 4+ and shallow or deep: %d quakes shown, %.3f ms testing every quake, "
+				+ "%.3f ms combining the filters, %d quakes differ%n",
+				shown, pass / 1e6, combined / 1e6, wrong);
+		BenchData.exitOnFailure();
+	}
+
+	// as the sketch's selectMarkerIfClicked did
+	private static void hideAllBut(List<Marker> markers, Marker hit) {
+		for (Marker m : markers) {
+			if (m == hit) {
+				m.setHidden(false);
+				((CommonMarker) m).setClicked(true);
+			}
+			else {
+				m.setHidden(true);
+				((CommonMarker) m).setClicked(false);
+			}
+		}
+	}
+
+	private static boolean[] hiddenFlags(List<Marker> quakes, List<Marker> cities) {
+		boolean[] flags = new boolean[quakes.size() + cities.size()];
+		for (int i = 0; i < quakes.size(); i++) {
+			flags[i] = quakes.get(i).isHidden();
+		}
+		for (int i = 0; i < cities.size(); i++) {
+			flags[quakes.size() + i] = cities.get(i).isHidden();
+		}
+		return flags;
+	}
+}
@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Finding the country of every quake with the country index, by id and with
+ * the isLand test the sketch uses
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ClassifyBenchmark extends SuiteBenchmark {
+
+	@Param({"classify.index", "classify.isLand"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
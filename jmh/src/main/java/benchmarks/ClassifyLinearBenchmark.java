@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Finding the country of every quake with the isInCountry scan over all
+ * countries; too slow to run at a scale of 100
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ClassifyLinearBenchmark extends SuiteBenchmark {
+
+	@Param({"classify.linear"})
+	public String name;
+
+	@Param({"1", "10"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
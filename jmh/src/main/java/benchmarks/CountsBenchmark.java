@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Counting the quakes per country, as buildQuakesCounts does after every
+ * feed refresh
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CountsBenchmark extends SuiteBenchmark {
+
+	@Param({"counts.buildQuakesCounts"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
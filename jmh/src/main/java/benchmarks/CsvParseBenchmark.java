@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Parsing the airports and life expectancy CSV files, their rows repeated
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CsvParseBenchmark extends SuiteBenchmark {
+
+	@Param({"csv.parseAirports", "csv.loadLifeExpectancyFromCSV"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Reading the bundled feed repeated, streamed with QuakeFeedReader and parsed
+ * into a DOM by ParseFeed.parseEarthquake
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ParseBenchmark extends SuiteBenchmark {
+
+	@Param({"parse.feed.stream", "parse.feed.dom"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
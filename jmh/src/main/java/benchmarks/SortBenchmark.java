@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Ordering the quakes by magnitude: sorting the markers with compareTo,
+ * sorting the store's rows, and the top 20 rows sortAndPrint prints
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class SortBenchmark extends SuiteBenchmark {
+
+	@Param({"sort.compareTo", "sort.rowsByMagnitude", "sort.sortAndPrint"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
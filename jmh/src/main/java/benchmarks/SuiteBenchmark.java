@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Runs one case of bench/BenchmarkSuite under JMH, by name and scale
+ *
+ * The cases are written in the default package, next to the sketch's
+ * classes, which a class in a package cannot name.  The case is therefore
+ * built once per trial with BenchmarkSuite.createCase, called by
+ * reflection, and every invocation runs it through LongSupplier, so JMH
+ * measures exactly the operation the suite measures.  Each subclass lists
+ * the cases of one area and the scales they run at; run with -prof gc for
+ * the bytes allocated per operation.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class SuiteBenchmark {
+
+	/** Folder with the bundled data files */
+	@Param({"../data"})
+	public String dataDir;
+
+	private LongSupplier operation;
+
+	/** The name of the case, e.g. "parse.feed.stream" */
+	protected abstract String caseName();
+
+	/** How many times the bundled data is repeated */
+	protected abstract int scale();
+
+	@Setup(Level.Trial)
+	public void createCase() throws Exception {
+		Method create = Class.forName("BenchmarkSuite").getMethod("createCase",
+				String.class, String.class, int.class);
+		operation = (LongSupplier) create.invoke(null, dataDir, caseName(), scale());
+		if (operation == null) {
+			throw new IllegalArgumentException("No case " + caseName() + " at scale " + scale());
+		}
+	}
+
+	@Benchmark
+	public long run() {
+		return operation.getAsLong();
+	}
+}
@@ -0,0 +1,26 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Building the index of the quakes' threat circles, and the threat-circle
+ * queries of the popup and of the impact lines
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ThreatBenchmark extends SuiteBenchmark {
+
+	@Param({"threat.index.ofThreatCircles", "threat.covering.cities", "threat.within.quakes"})
+	public String name;
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	protected String caseName() {
+		return name;
+	}
+
+	protected int scale() {
+		return scale;
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.mapdisplay.AbstractMapDisplay;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MarkerManager;
+import processing.core.PGraphics;
+import processing.core.PVector;
+
+/** A marker manager that draws its markers with a MarkerBatch and keeps
+ * their screen positions between frames
+ *
+ * MarkerManager projects every marker's location in every frame.  This
+ * manager stores each marker's screen position in the marker together with
+ * the version of the map's transform it was projected with, and only
+ * projects a marker again after the map was panned, zoomed or resized, so
+ * frames of a still map draw from the stored positions.  Hidden markers, and
+ * markers outside the viewport, are skipped before their position is looked
+ * at, as CommonMarker does.
+ *
+ * Markers are drawn in list order, so overlapping markers cover each other
+ * as they do when drawn one by one.  Markers that are not CommonMarkers are
+ * drawn by their own draw method.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class BatchedMarkerManager extends MarkerManager<Marker> {
+
+	// versions are shared by all managers, so a marker drawn by two managers
+	// never takes a position projected by the other
+	private static long versions;
+
+	private MarkerBatch batch = new MarkerBatch();
+
+	// the transform the current version was taken for
+	private long version = -1;
+	private float[] transform = new float[12];
+	private float[] current = new float[12];
+	private double innerOffsetX;
+	private double innerOffsetY;
+
+	public BatchedMarkerManager() {
+		super();
+	}
+
+	public BatchedMarkerManager(List<Marker> markers) {
+		super(markers);
+	}
+
+	@Override
+	public void draw() {
+		if (!bEnableDrawing || map == null) {
+			return;
+		}
+		AbstractMapDisplay display = map.mapDisplay;
+		updateVersion(display);
+		Viewport viewport = CommonMarker.getViewport();
+		FrameMetrics metrics = CommonMarker.getMetrics();
+		PGraphics pg = display.getOuterPG();
+		batch.begin(pg);
+		for (Marker m : markers) {
+			if (!(m instanceof CommonMarker)) {
+				batch.draw(m, map);
+				continue;
+			}
+			CommonMarker marker = (CommonMarker) m;
+			// hidden markers are neither tested nor projected
+			if (marker.isHidden()) {
+				if (metrics != null) {
+					metrics.markerCulled();
+				}
+				continue;
+			}
+			if (viewport != null && !viewport.contains(marker.getLocation())) {
+				if (metrics != null) {
+					metrics.markerOffscreen();
+				}
+				continue;
+			}
+			if (marker.screenVersion != version) {
+				float[] position = display.getObjectFromLocation(marker.getLocation());
+				marker.screenX = position[0];
+				marker.screenY = position[1];
+				marker.screenVersion = version;
+			}
+			batch.draw(marker, marker.screenX, marker.screenY);
+		}
+		batch.end();
+	}
+
+	// takes a new version if anything the projection depends on changed
+	private void updateVersion(AbstractMapDisplay display) {
+		PVector center = display.getTransformationCenter();
+		PVector innerCenter = display.getInnerTransformationCenter();
+		current[0] = display.offsetX;
+		current[1] = display.offsetY;
+		current[2] = display.innerScale;
+		current[3] = display.innerAngle;
+		current[4] = display.scale;
+		current[5] = display.angle;
+		current[6] = display.getWidth();
+		current[7] = display.getHeight();
+		current[8] = center.x;
+		current[9] = center.y;
+		current[10] = innerCenter.x;
+		current[11] = innerCenter.y;
+		// the inner offsets are doubles, too large for a float at high zoom
+		if (version < 0 || !Arrays.equals(current, transform) ||
+				display.innerOffsetX != innerOffsetX || display.innerOffsetY != innerOffsetY) {
+			float[] swap = transform;
+			transform = current;
+			current = swap;
+			innerOffsetX = display.innerOffsetX;
+			innerOffsetY = display.innerOffsetY;
+			version = ++versions;
+		}
+	}
+}
@@ -28,19 +28,25 @@ public class CityMarker extends CommonMarker {
 	}
 	
 	
+	// Style key of every city, the red of its triangle
+	private static final int CITY_COLOR = 0xFFFF0000;
+	
+	@Override
+	public int getStyleKey() {
+		return CITY_COLOR;
+	}
+	
+	@Override
+	public void applyStyle(PGraphics pg) {
+		pg.fill(255, 0, 0);
+	}
+	
 	/**
-	 * Implementation of method to draw marker on the map.
+	 * Code to draw a triangle to represent the CityMarker
 	 */
-	public void drawMarker(PGraphics pg, float x, float y) {
-		// Save previous drawing style
-		pg.pushStyle();
-		
-		// Code to draw a triangle to represent the CityMarker
-		pg.fill(255, 0, 0);
+	@Override
+	public void drawShape(PGraphics pg, float x, float y) {
 		pg.triangle(x, (y-TRI_SIZE), (x-TRI_SIZE), (y+TRI_SIZE), (x+TRI_SIZE), (y+TRI_SIZE));
-		
-		// Restore previous drawing style
-		pg.popStyle();
 	}
 	
 	/** Show the title of the city if this marker is selected */
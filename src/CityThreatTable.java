@@ -0,0 +1,189 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Summary of the earthquakes threatening each city
+ *
+ * For every city the table keeps the number of quakes whose threat circle
+ * covers it, their mean and maximum magnitude and the most recent of them.
+ * It is built once when the data is loaded and updated incrementally when
+ * quakes are added or removed, so the popup is a lookup instead of a scan
+ * over all quakes every frame.
+ *
+ * The values are exactly those a scan over the quake list in order would
+ * compute: magnitudes are summed in list order, and the most recent quake
+ * is the first one in the list among the most recent.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CityThreatTable {
+
+	/** The threat summary of one city */
+	public static class Summary {
+		private final Marker city;
+		private int count;
+		private float sumMagnitude;
+		private float maxMagnitude;
+		private EarthquakeMarker mostRecent;
+
+		private Summary(Marker city) {
+			this.city = city;
+		}
+
+		private void add(EarthquakeMarker quake) {
+			if (mostRecent == null || quake.isMoreRecentThan(mostRecent)) {
+				mostRecent = quake;
+			}
+			if (count == 0 || quake.getMagnitude() > maxMagnitude) {
+				maxMagnitude = quake.getMagnitude();
+			}
+			count++;
+			sumMagnitude += quake.getMagnitude();
+		}
+
+		private void clear() {
+			count = 0;
+			sumMagnitude = 0;
+			maxMagnitude = 0;
+			mostRecent = null;
+		}
+
+		public Marker getCity() {
+			return city;
+		}
+
+		/** Number of quakes whose threat circle covers the city */
+		public int getCount() {
+			return count;
+		}
+
+		/** Mean magnitude of the nearby quakes, 0 if there are none */
+		public float getMeanMagnitude() {
+			return (count > 0) ? sumMagnitude/count : 0;
+		}
+
+		/** Largest magnitude of the nearby quakes, 0 if there are none */
+		public float getMaxMagnitude() {
+			return maxMagnitude;
+		}
+
+		/** The most recent nearby quake, or null if there are none */
+		public EarthquakeMarker getMostRecent() {
+			return mostRecent;
+		}
+	}
+
+	/** Orders cities by number of nearby quakes, then by their maximum magnitude */
+	public static final Comparator<Summary> BY_EXPOSURE = new Comparator<Summary>() {
+		public int compare(Summary a, Summary b) {
+			if (a.count != b.count) {
+				return (a.count > b.count) ? -1 : 1;
+			}
+			return Float.compare(b.maxMagnitude, a.maxMagnitude);
+		}
+	};
+
+	private List<Marker> cities;
+	private ProximityIndex cityIndex;
+	private List<Summary> summaries = new ArrayList<Summary>();
+	private IdentityHashMap<Marker, Summary> byCity = new IdentityHashMap<Marker, Summary>();
+
+	public CityThreatTable(List<Marker> cities, ProximityIndex cityIndex) {
+		this.cities = cities;
+		this.cityIndex = cityIndex;
+		for (Marker city : cities) {
+			Summary summary = new Summary(city);
+			summaries.add(summary);
+			byCity.put(city, summary);
+		}
+	}
+
+	/** Adds quakes that were appended to the end of the quake list, in order */
+	public void add(List<? extends Marker> quakes) {
+		for (Marker m : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			for (int i : cityIndex.within(quake.getLocation(), quake.threatCircle())) {
+				summaries.get(i).add(quake);
+			}
+		}
+	}
+
+	/** Updates the table after quakes were removed from and appended to the
+	 * quake list.  Only the cities threatened by the removed quakes are
+	 * recomputed, from the new list and its index.
+	 */
+	public void update(Collection<? extends Marker> removed, List<? extends Marker> added,
+			List<Marker> quakes, ProximityIndex quakeIndex) {
+		Set<Integer> affected = new HashSet<Integer>();
+		for (Marker m : removed) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			for (int i : cityIndex.within(quake.getLocation(), quake.threatCircle())) {
+				affected.add(i);
+			}
+		}
+		for (int i : affected) {
+			Summary summary = summaries.get(i);
+			summary.clear();
+			for (int q : quakeIndex.covering(cities.get(i).getLocation())) {
+				summary.add((EarthquakeMarker) quakes.get(q));
+			}
+		}
+		// recomputed cities already include the added quakes
+		for (Marker m : added) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			for (int i : cityIndex.within(quake.getLocation(), quake.threatCircle())) {
+				if (!affected.contains(i)) {
+					summaries.get(i).add(quake);
+				}
+			}
+		}
+	}
+
+	/** Returns the summary of the given city marker */
+	public Summary get(Marker city) {
+		return byCity.get(city);
+	}
+
+	/** Returns the summaries of all cities, in city list order */
+	public List<Summary> getSummaries() {
+		return Collections.unmodifiableList(summaries);
+	}
+
+	/** Returns the summaries of all cities, most exposed first */
+	public List<Summary> byExposure() {
+		List<Summary> sorted = new ArrayList<Summary>(summaries);
+		Collections.sort(sorted, BY_EXPOSURE);
+		return sorted;
+	}
+
+	/** Writes one CSV row per city, most exposed first */
+	public void writeCsv(PrintWriter out) {
+		out.println("city,country,quakes,mean_magnitude,max_magnitude,most_recent");
+		for (Summary s : byExposure()) {
+			out.println(csv(s.city.getStringProperty("name")) + "," +
+					csv(s.city.getStringProperty("country")) + "," +
+					s.count + "," + s.getMeanMagnitude() + "," + s.maxMagnitude + "," +
+					((s.mostRecent == null) ? "" : csv(s.mostRecent.getTitle())));
+		}
+		out.flush();
+	}
+
+	private static String csv(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+}
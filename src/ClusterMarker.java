@@ -0,0 +1,79 @@
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/** Implements a visual marker for a group of nearby earthquakes, drawn in
+ * their place when the map is zoomed out
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ClusterMarker extends CommonMarker {
+
+	private int count;
+	private float maxMagnitude;
+
+	// the zoom level the cluster was built for
+	private int zoomLevel;
+
+	public ClusterMarker(Location location, int count, float maxMagnitude, int zoomLevel) {
+		super(location);
+		this.count = count;
+		this.maxMagnitude = maxMagnitude;
+		this.zoomLevel = zoomLevel;
+		// hit anywhere on the drawn circle
+		this.radius = getSize() / 2;
+	}
+
+	/** Draw the cluster as a circle labelled with its number of quakes;
+	 * the circle grows with the largest magnitude in the cluster
+	 */
+	@Override
+	public void drawMarker(PGraphics pg, float x, float y) {
+		pg.pushStyle();
+
+		float size = getSize();
+		pg.fill(255, 255, 255);
+		pg.stroke(0, 0, 0);
+		pg.strokeWeight(1);
+		pg.ellipse(x, y, size, size);
+
+		pg.fill(0, 0, 0);
+		pg.textAlign(PConstants.CENTER, PConstants.CENTER);
+		pg.textSize(9);
+		pg.text(count, x, y);
+
+		pg.popStyle();
+	}
+
+	/** Show the number of quakes and the largest magnitude if selected */
+	@Override
+	public void showTitle(PGraphics pg, float x, float y) {
+		pg.pushStyle();
+
+		String clusterInfo = count + " earthquakes, largest M " + maxMagnitude;
+		pg.fill(255, 250, 240);
+		pg.rect(x, (y-15), (10+(7*clusterInfo.length())+10), 25);
+		pg.fill(0, 0, 0);
+		pg.text(clusterInfo, (x+10), y);
+
+		pg.popStyle();
+	}
+
+	// diameter in pixels, at least as big as the largest quake's marker
+	private float getSize() {
+		return Math.max(2*maxMagnitude, 12 + 2*(float) Math.log(count));
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public float getMaxMagnitude() {
+		return maxMagnitude;
+	}
+
+	public int getZoomLevel() {
+		return zoomLevel;
+	}
+}
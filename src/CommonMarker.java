@@ -22,6 +22,23 @@ public abstract class CommonMarker extends SimplePointMarker {
 	// Records whether this marker has been clicked (most recently)
 	protected boolean clicked = false;
 	
+	// Receives the time spent drawing each marker, or null
+	private static FrameMetrics metrics;
+	
+	// The part of the world on screen this frame, or null to draw every marker
+	private static Viewport viewport;
+	
+	// The set deciding whether this marker is shown, and the marker's index
+	// in it, or null if only the hidden flag counts
+	private MarkerVisibility visibility;
+	private int visibilityIndex;
+	
+	// Screen position kept by a BatchedMarkerManager, and the version of
+	// the map's transform it was projected with
+	float screenX;
+	float screenY;
+	long screenVersion = -1;
+	
 	public CommonMarker(Location location) {
 		super(location);
 	}
@@ -40,6 +57,71 @@ public abstract class CommonMarker extends SimplePointMarker {
 		clicked = state;
 	}
 	
+	// Makes the marker hidden whenever it is not visible in the set, at
+	// the given index, in addition to its hidden flag
+	public void setVisibility(MarkerVisibility markerVisibility, int index) {
+		visibility = markerVisibility;
+		visibilityIndex = index;
+	}
+	
+	// The marker's index in its visibility set
+	public int getVisibilityIndex() {
+		return visibilityIndex;
+	}
+	
+	// Hidden by its flag, or not visible in its visibility set
+	@Override
+	public boolean isHidden() {
+		return hidden || (visibility != null && !visibility.isVisible(visibilityIndex));
+	}
+	
+	// Sets the metrics that markers report to while drawing, or null
+	// to stop reporting
+	public static void setMetrics(FrameMetrics frameMetrics) {
+		metrics = frameMetrics;
+	}
+	
+	// Sets the view that markers outside of are skipped without being
+	// projected, or null to draw every marker
+	public static void setViewport(Viewport frameViewport) {
+		viewport = frameViewport;
+	}
+	
+	// The metrics markers report to, or null
+	protected static FrameMetrics getMetrics() {
+		return metrics;
+	}
+	
+	// The view markers are drawn in, or null if every marker is drawn
+	protected static Viewport getViewport() {
+		return viewport;
+	}
+	
+	// Skips hidden markers, and markers outside the viewport, before
+	// projecting their location
+	@Override
+	public void draw(UnfoldingMap map) {
+		if (isHidden()) {
+			if (metrics != null) {
+				metrics.markerCulled();
+			}
+			return;
+		}
+		if (viewport != null && !viewport.contains(getLocation())) {
+			if (metrics != null) {
+				metrics.markerOffscreen();
+			}
+			return;
+		}
+		super.draw(map);
+	}
+	
+	// Distance in pixels from the marker's position within which
+	// isInside reports a hit
+	public float getHitRadius() {
+		return radius;
+	}
+	
 	// Common piece of drawing method for markers; 
 	// YOU WILL IMPLEMENT. 
 	// Note that you should implement this by making calls 
@@ -47,13 +129,61 @@ public abstract class CommonMarker extends SimplePointMarker {
 	// implemented in subclasses
 	public void draw(PGraphics pg, float x, float y) {
 		// For starter code just drawMaker(...)
-		if (!hidden) {
+		if (!isHidden()) {
+			long start = (metrics != null) ? System.nanoTime() : 0;
 			drawMarker(pg, x, y);
 			if (selected) {
 				showTitle(pg, x, y);
 			}
+			if (metrics != null) {
+				metrics.markerDrawn(System.nanoTime() - start);
+			}
+		}
+		else if (metrics != null) {
+			metrics.markerCulled();
 		}
 	}
-	public abstract void drawMarker(PGraphics pg, float x, float y);
+	
+	/** Style key of markers that are always drawn by drawMarker */
+	public static final int NO_STYLE = -1;
+	
+	// Draws the marker in the style set by applyStyle, saving and
+	// restoring the style around it.  A MarkerBatch draws markers with a
+	// style key through the same methods, setting the style only when the
+	// key changes; markers that override drawMarker keep NO_STYLE.
+	public void drawMarker(PGraphics pg, float x, float y) {
+		pg.pushStyle();
+		applyStyle(pg);
+		drawShape(pg, x, y);
+		if (hasDecoration()) {
+			drawDecoration(pg, x, y);
+		}
+		pg.popStyle();
+	}
+	
+	// Markers with the same key set the same style in applyStyle, or
+	// NO_STYLE if the marker is drawn by its own drawMarker
+	public int getStyleKey() {
+		return NO_STYLE;
+	}
+	
+	// Sets the style the shape is drawn in
+	public void applyStyle(PGraphics pg) {
+	}
+	
+	// Draws the marker's shape in the style applyStyle set, without
+	// changing the style
+	public void drawShape(PGraphics pg, float x, float y) {
+	}
+	
+	// Returns true if the marker draws over its shape with drawDecoration
+	public boolean hasDecoration() {
+		return false;
+	}
+	
+	// Draws over the shape, setting the style it needs
+	public void drawDecoration(PGraphics pg, float x, float y) {
+	}
+	
 	public abstract void showTitle(PGraphics pg, float x, float y);
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** The countries of the country file, each with a dense int id
+ *
+ * Ids are assigned once, in the order the countries were loaded, and are the
+ * ids CountryIndex returns and QuakeStore keeps per quake.  Anything counted
+ * per country can then live in a primitive array indexed by id instead of a
+ * map keyed by name.  Looking up a name is only needed at the edges, e.g.
+ * to read a name given on the command line.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CountryDictionary {
+
+	private String[] names;
+	private HashMap<String, Integer> ids;
+
+	/**
+	 * @param names - country names, in the order of the country file
+	 */
+	public CountryDictionary(List<String> names) {
+		this.names = names.toArray(new String[names.size()]);
+		ids = new HashMap<String, Integer>();
+		for (int id = 0; id < this.names.length; id++) {
+			// a repeated name keeps its first id, as the linear country scan would
+			if (!ids.containsKey(this.names[id])) {
+				ids.put(this.names[id], id);
+			}
+		}
+	}
+
+	/** Number of countries; ids run from 0 to size() - 1 */
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/** Returns true if a country has this name */
+	public boolean contains(String name) {
+		return ids.containsKey(name);
+	}
+
+	/** The id of the country with this name, or QuakeStore.OCEAN if there
+	 * is none
+	 */
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return (id == null) ? QuakeStore.OCEAN : id;
+	}
+
+	/** The names of all countries, indexed by id */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MultiMarker;
+
+/** Spatial index answering "which country contains this location"
+ *
+ * Every polygon making up a country (each sub-polygon of a MultiMarker, or
+ * the country's own SimplePolygonMarker) is stored with its bounding box and
+ * registered in the cells of a uniform lat/lon grid that the box overlaps.
+ * A lookup only runs the point-in-polygon test on the parts registered in
+ * the location's cell whose bounding box contains the location.
+ *
+ * Parts are kept in the same order as the country list, so the country
+ * returned is always the one the linear scan over all countries would have
+ * found first.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class CountryIndex {
+
+	/** Width and height of a grid cell, in degrees */
+	public static final float CELL_DEGREES = 5;
+
+	private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES);
+	private static final int COLS = (int) Math.ceil(360 / CELL_DEGREES);
+
+	private static final int[] NO_PARTS = new int[0];
+
+	// The country markers, in the order they were loaded
+	private List<Marker> countryMarkers;
+	private CountryDictionary countries;
+
+	// One entry per polygon part: owning country, shape and bounding box
+	private int[] partCountry;
+	private AbstractShapeMarker[] partShape;
+	private float[] minLat;
+	private float[] maxLat;
+	private float[] minLon;
+	private float[] maxLon;
+
+	// Part indices registered in each grid cell, in ascending order
+	private int[][] cells;
+
+	public CountryIndex(List<Marker> countryMarkers) {
+		this.countryMarkers = countryMarkers;
+
+		List<String> names = new ArrayList<String>();
+		for (Marker country : countryMarkers) {
+			names.add(country.getStringProperty("name"));
+		}
+		countries = new CountryDictionary(names);
+
+		List<AbstractShapeMarker> shapes = new ArrayList<AbstractShapeMarker>();
+		List<Integer> owners = new ArrayList<Integer>();
+		for (int c = 0; c < countryMarkers.size(); c++) {
+			Marker country = countryMarkers.get(c);
+			if (country.getClass() == MultiMarker.class) {
+				for (Marker marker : ((MultiMarker)country).getMarkers()) {
+					shapes.add((AbstractShapeMarker) marker);
+					owners.add(c);
+				}
+			}
+			else {
+				shapes.add((AbstractShapeMarker) country);
+				owners.add(c);
+			}
+		}
+
+		int numParts = shapes.size();
+		partCountry = new int[numParts];
+		partShape = new AbstractShapeMarker[numParts];
+		minLat = new float[numParts];
+		maxLat = new float[numParts];
+		minLon = new float[numParts];
+		maxLon = new float[numParts];
+
+		int[] cellSizes = new int[ROWS*COLS];
+		for (int p = 0; p < numParts; p++) {
+			partCountry[p] = owners.get(p);
+			partShape[p] = shapes.get(p);
+			computeBounds(p);
+			if (!isEmpty(p)) {
+				for (int row = rowOf(minLat[p]); row <= rowOf(maxLat[p]); row++) {
+					for (int col = colOf(minLon[p]); col <= colOf(maxLon[p]); col++) {
+						cellSizes[row*COLS + col]++;
+					}
+				}
+			}
+		}
+
+		cells = new int[ROWS*COLS][];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = (cellSizes[i] == 0) ? NO_PARTS : new int[cellSizes[i]];
+			cellSizes[i] = 0;
+		}
+		for (int p = 0; p < numParts; p++) {
+			if (!isEmpty(p)) {
+				for (int row = rowOf(minLat[p]); row <= rowOf(maxLat[p]); row++) {
+					for (int col = colOf(minLon[p]); col <= colOf(maxLon[p]); col++) {
+						int cell = row*COLS + col;
+						cells[cell][cellSizes[cell]++] = p;
+					}
+				}
+			}
+		}
+	}
+
+	/** Checks whether this quake occurred on land.  If it did, it sets the
+	 * "country" property of its PointFeature to the country where it occurred
+	 * and returns true.  Otherwise it returns false.
+	 */
+	public boolean isLand(PointFeature earthquake) {
+		Marker country = findCountry(earthquake.getLocation());
+		if (country != null) {
+			earthquake.addProperty("country", country.getProperty("name"));
+			return true;
+		}
+		return false;
+	}
+
+	/** Returns the country marker containing the location, or null if the
+	 * location is not inside any country.
+	 */
+	public Marker findCountry(Location location) {
+		int id = findCountryId(location);
+		return (id >= 0) ? countryMarkers.get(id) : null;
+	}
+
+	/** Returns the position of the country containing the location in the
+	 * country marker list, or QuakeStore.OCEAN if there is none.
+	 */
+	public int findCountryId(Location location) {
+		float lat = location.getLat();
+		float lon = location.getLon();
+		int[] candidates = cells[rowOf(lat)*COLS + colOf(lon)];
+		for (int p : candidates) {
+			// the point-in-polygon test can only succeed inside the bounding box
+			if (lat >= minLat[p] && lat <= maxLat[p] &&
+					lon >= minLon[p] && lon <= maxLon[p] &&
+					partShape[p].isInsideByLocation(location)) {
+				return partCountry[p];
+			}
+		}
+		return QuakeStore.OCEAN;
+	}
+
+	/** The "name" property of every country, indexed by country id */
+	public List<String> getCountryNames() {
+		return countries.getNames();
+	}
+
+	/** The countries with the ids this index returns */
+	public CountryDictionary getCountries() {
+		return countries;
+	}
+
+	/** Reference implementation: tests every part of every country in order.
+	 * Kept to check the index against and to benchmark it.
+	 */
+	public Marker findCountryLinear(Location location) {
+		for (int p = 0; p < partShape.length; p++) {
+			if (partShape[p].isInsideByLocation(location)) {
+				return countryMarkers.get(partCountry[p]);
+			}
+		}
+		return null;
+	}
+
+	public int getNumParts() {
+		return partShape.length;
+	}
+
+	private void computeBounds(int p) {
+		minLat[p] = Float.POSITIVE_INFINITY;
+		maxLat[p] = Float.NEGATIVE_INFINITY;
+		minLon[p] = Float.POSITIVE_INFINITY;
+		maxLon[p] = Float.NEGATIVE_INFINITY;
+		for (Location loc : partShape[p].getLocations()) {
+			minLat[p] = Math.min(minLat[p], loc.getLat());
+			maxLat[p] = Math.max(maxLat[p], loc.getLat());
+			minLon[p] = Math.min(minLon[p], loc.getLon());
+			maxLon[p] = Math.max(maxLon[p], loc.getLon());
+		}
+	}
+
+	// a part without vertices can never contain a location
+	private boolean isEmpty(int p) {
+		return minLat[p] > maxLat[p];
+	}
+
+	// locations outside the valid range are clamped to the border cells,
+	// both when registering parts and when looking up
+	private static int rowOf(float lat) {
+		int row = (int) Math.floor((lat + 90) / CELL_DEGREES);
+		return Math.max(0, Math.min(ROWS - 1, row));
+	}
+
+	private static int colOf(float lon) {
+		int col = (int) Math.floor((lon + 180) / CELL_DEGREES);
+		return Math.max(0, Math.min(COLS - 1, col));
+	}
+}
@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.GeoJSONReader;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+import parsing.QuakeFeedReader;
+
+/** Runs the analysis of EarthquakeCityMap on local feed files without
+ * opening a window
+ *
+ * Each feed is read, its quakes are classified as land or ocean quakes, and
+ * the per-country counts and the largest quakes are printed exactly as the
+ * sketch prints them at startup.  Optionally the counts, the largest quakes
+ * and the threat summary of every city are also written as CSV or JSON files
+ * named after the feed.
+ *
+ * Usage:
+ *   java EarthquakeBatch [options] feed...
+ * Options:
+ *   --data dir     folder with countries.geo.json and city-data.json (data)
+ *   --top n        number of largest quakes to print, 0 for none (20)
+ *   --no-counts    do not print the per-country counts
+ *   --csv dir      write feed.countries.csv, feed.largest.csv, feed.cities.csv
+ *   --json dir     write feed.json
+ *   --threads n    threads classifying the quakes (all processors)
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class EarthquakeBatch {
+
+	private static final String COUNTRY_FILE = "countries.geo.json";
+	private static final String CITY_FILE = "city-data.json";
+
+	public static void main(String[] args) throws IOException {
+		String dataDir = "data";
+		int top = 20;
+		boolean counts = true;
+		String csvDir = null;
+		String jsonDir = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> feeds = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--data") && i + 1 < args.length) {
+				dataDir = args[++i];
+			}
+			else if (args[i].equals("--top") && i + 1 < args.length) {
+				top = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--no-counts")) {
+				counts = false;
+			}
+			else if (args[i].equals("--csv") && i + 1 < args.length) {
+				csvDir = args[++i];
+			}
+			else if (args[i].equals("--json") && i + 1 < args.length) {
+				jsonDir = args[++i];
+			}
+			else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].startsWith("--")) {
+				usage("Unknown option " + args[i]);
+				return;
+			}
+			else {
+				feeds.add(args[i]);
+			}
+		}
+		if (feeds.isEmpty()) {
+			usage("No feed given");
+			return;
+		}
+
+		// the countries and cities are shared by all feeds
+		List<Marker> countryMarkers = MapUtils.createSimpleMarkers(loadGeoJSON(new File(dataDir, COUNTRY_FILE)));
+		CountryIndex countryIndex = new CountryIndex(countryMarkers);
+		List<Marker> cityMarkers = new ArrayList<Marker>();
+		for (Feature city : loadGeoJSON(new File(dataDir, CITY_FILE))) {
+			cityMarkers.add(new CityMarker(city));
+		}
+		ProximityIndex cityIndex = ProximityIndex.ofMarkers(cityMarkers);
+
+		QuakeIngestor ingestor = new QuakeIngestor(countryIndex, threads);
+		try {
+			for (String feed : feeds) {
+				File feedFile = new File(feed);
+				if (feeds.size() > 1) {
+					System.out.println("== " + feed);
+				}
+
+				QuakeStore quakeStore = new QuakeStore(countryIndex.getCountries());
+				QuakeFeedReader reader = new QuakeFeedReader(new FileInputStream(feedFile));
+				List<Marker> quakeMarkers = new ArrayList<Marker>(ingestor.ingest(reader, quakeStore, null));
+				reader.close();
+
+				QuakeReport report = new QuakeReport(quakeStore);
+				if (counts) {
+					report.printQuakes(System.out);
+				}
+				report.sortAndPrint(top, System.out);
+
+				if (csvDir != null || jsonDir != null) {
+					CityThreatTable threatTable = new CityThreatTable(cityMarkers, cityIndex);
+					threatTable.add(quakeMarkers);
+					String name = baseName(feedFile);
+					if (csvDir != null) {
+						PrintWriter out = open(new File(csvDir, name + ".countries.csv"));
+						report.writeCountsCsv(out);
+						out.close();
+						out = open(new File(csvDir, name + ".largest.csv"));
+						report.writeTopCsv(top, out);
+						out.close();
+						out = open(new File(csvDir, name + ".cities.csv"));
+						threatTable.writeCsv(out);
+						out.close();
+					}
+					if (jsonDir != null) {
+						PrintWriter out = open(new File(jsonDir, name + ".json"));
+						report.writeJson(top, threatTable.byExposure(), out);
+						out.close();
+					}
+				}
+			}
+		}
+		finally {
+			ingestor.shutdown();
+		}
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: java EarthquakeBatch [--data dir] [--top n] [--no-counts] " +
+				"[--csv dir] [--json dir] [--threads n] feed...");
+		System.exit(2);
+	}
+
+	private static List<Feature> loadGeoJSON(File file) throws IOException {
+		String json = new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+		return GeoJSONReader.loadDataFromJSON(null, json);
+	}
+
+	private static PrintWriter open(File file) throws IOException {
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		return new PrintWriter(new FileWriter(file));
+	}
+
+	// the feed's file name without its extension
+	private static String baseName(File feed) {
+		String name = feed.getName();
+		int dot = name.lastIndexOf('.');
+		return (dot > 0) ? name.substring(0, dot) : name;
+	}
+}
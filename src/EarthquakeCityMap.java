@@ -1,23 +1,25 @@
 
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import de.fhpotsdam.unfolding.UnfoldingMap;
 import de.fhpotsdam.unfolding.data.Feature;
 import de.fhpotsdam.unfolding.data.GeoJSONReader;
 import de.fhpotsdam.unfolding.data.PointFeature;
-import de.fhpotsdam.unfolding.geo.Location;
-import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
 import de.fhpotsdam.unfolding.marker.Marker;
-import de.fhpotsdam.unfolding.marker.MultiMarker;
+import de.fhpotsdam.unfolding.marker.MarkerManager;
 import de.fhpotsdam.unfolding.providers.Google;
 import de.fhpotsdam.unfolding.providers.MBTilesMapProvider;
 import de.fhpotsdam.unfolding.utils.MapUtils;
 import parsing.ParseFeed;
+import parsing.QuakeFeedReader;
 import processing.core.PApplet;
 
 /** EarthquakeCityMap
@@ -48,10 +50,50 @@ public class EarthquakeCityMap extends PApplet {
 	//feed with magnitude 2.5+ Earthquakes
 	private String earthquakesURL = "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/2.5_week.atom";
 	
+	// Seconds between background re-polls of the feed, 0 to read it only once.
+	// Works with a local file too, for testing.
+	private static final int refreshSeconds = 0;
+	
+	// Threads classifying quakes as land or ocean quakes while the feed is
+	// read, 1 to classify them on the animation thread
+	private static final int ingestThreads = Runtime.getRuntime().availableProcessors();
+	
 	// The files containing city names and info and country names and info
 	private String cityFile = "city-data.json";
 	private String countryFile = "countries.geo.json";
 	
+	// Parsed copy of the files above and of a local feed, used instead of
+	// parsing them again while none of them has changed
+	private static final boolean useSnapshot = true;
+	private String snapshotFile = "earthquake-map.snapshot";
+	
+	// Frame timings, shown over the map while the metricsKey is toggled on
+	// and written every metricsSeconds to metricsLog, if not null (CSV, or
+	// JSON lines for a ".json" file)
+	private static final char metricsKey = 'm';
+	private static final float metricsSeconds = 1;
+	private String metricsLog = null;
+	
+	// Replays the feed's quakes through a sliding window of playbackHours
+	// instead of showing them all, starting paused at the first quake and
+	// playing playbackSpeed hours of quakes per second.  playKey starts and
+	// pauses, slowerKey and fasterKey halve and double the speed and
+	// restartKey goes back to the first quake.  Meant for a long local
+	// archive in the feed format.
+	private static final boolean playback = false;
+	private static final float playbackHours = 24;
+	private static final float playbackSpeed = 6;
+	private static final char playKey = ' ';
+	private static final char slowerKey = '[';
+	private static final char fasterKey = ']';
+	private static final char restartKey = 'r';
+	
+	// Only quakes of at least minMagnitude are shown, if it is more than 0,
+	// and only those in the country named onlyCountry, if it is not null;
+	// a name that is not a country's is reported and not filtered on
+	private static final float minMagnitude = 0;
+	private static final String onlyCountry = null;
+	
 	// The map
 	private UnfoldingMap map;
 	
@@ -60,17 +102,69 @@ public class EarthquakeCityMap extends PApplet {
 	// Markers for each earthquake
 	private List<Marker> quakeMarkers;
 	
-	private HashMap<String, Integer> quakeCount;
+	// The earthquakes' values, one row per quake, read by the markers and
+	// the analytics below
+	private QuakeStore quakeStore;
+	
+	// The markers by feed entry key, to apply feed refreshes
+	private HashMap<String, EarthquakeMarker> quakesByKey;
+	
+	// Quake counts per country and the largest quakes, printed at startup
+	private QuakeReport report;
 
 	// A List of country markers
 	private List<Marker> countryMarkers;
 	
+	// Spatial index over the country polygons, used to classify quakes
+	private CountryIndex countryIndex;
+	
+	// Spatial indices over the city locations and the quake threat circles,
+	// rebuilt whenever quakeMarkers changes
+	private ProximityIndex cityIndex;
+	private ProximityIndex quakeIndex;
+	
+	// Nearby quake summary for every city, shown in the popup
+	private CityThreatTable threatTable;
+	
+	// Which quakes and cities are shown: the quakes passing the filters,
+	// narrowed to the clicked marker and those around it while one is
+	// clicked
+	private MarkerVisibility quakeVisibility;
+	private MarkerVisibility cityVisibility;
+	
+	// The cities in every quake's threat circle, and the layer drawing the
+	// lines from the clicked quake to them
+	private ImpactEdges impactEdges;
+	private ImpactLineLayer impactLines;
+	
+	// Finds the marker under the mouse, searching the visible quakes or
+	// clusters first and then the cities
+	private ScreenHitIndex hitIndex;
+	private List<List<Marker>> hitLists;
+	
+	// Draws clusters of quakes instead of single quakes when zoomed out,
+	// or only the quakes of the playback window during playback
+	private QuakeClusterLayer clusterLayer;
+	private QuakePlayback quakePlayback;
+	
 	// NEW IN MODULE 5
 	private CommonMarker lastSelected;
 	private CommonMarker lastClicked;
 	
 	private boolean cityClicked;
 	
+	// Re-polls the feed when refreshSeconds > 0
+	private FeedRefresher refresher;
+	// time of the latest quake of a feed that is not refreshed
+	private long feedTime = QuakeStore.NO_TIME;
+	
+	private FrameMetrics metrics;
+	private boolean showMetrics;
+	
+	// The part of the world on screen, recomputed every frame; markers
+	// outside it are not drawn
+	private Viewport viewport;
+	
 	public void setup() {		
 		// (1) Initializing canvas and map tiles
 		size(900, 700, OPENGL);
@@ -95,73 +189,346 @@ public class EarthquakeCityMap extends PApplet {
 		
 		
 		// (2) Reading in earthquake data and geometric properties
+		//     The snapshot is null if it is missing or any source changed.
+		//     The sources are keyed before they are parsed, so a snapshot
+		//     written below describes the files that were actually read
+		File feedFile = dataFile(earthquakesURL).isFile() ? dataFile(earthquakesURL) : null;
+		Snapshot.Sources sources = null;
+		Snapshot snapshot = null;
+		if (useSnapshot) {
+			try {
+				sources = Snapshot.Sources.of(dataFile(countryFile), dataFile(cityFile), feedFile);
+				snapshot = Snapshot.load(dataFile(snapshotFile), sources);
+			}
+			catch (IOException e) {
+				System.out.println("Could not read data files for the snapshot: " + e.getMessage());
+			}
+		}
+		
 	    //     STEP 1: load country features and markers
-		List<Feature> countries = GeoJSONReader.loadData(this, countryFile);
+		List<Feature> countries = (snapshot != null) ? snapshot.countries :
+			GeoJSONReader.loadData(this, countryFile);
 		countryMarkers = MapUtils.createSimpleMarkers(countries);
+		countryIndex = new CountryIndex(countryMarkers);
 		
 		//     STEP 2: read in city data
-		List<Feature> cities = GeoJSONReader.loadData(this, cityFile);
+		List<Feature> cities = (snapshot != null) ? snapshot.cities :
+			GeoJSONReader.loadData(this, cityFile);
 		cityMarkers = new ArrayList<Marker>();
 		for(Feature city : cities) {
 		  cityMarkers.add(new CityMarker(city));
 		}
 	    
 		//     STEP 3: read in earthquake RSS feed
-	    List<PointFeature> earthquakes = ParseFeed.parseEarthquake(this, earthquakesURL);
+		//     Entries are streamed, so markers are built while the feed is
+		//     still being read
+	    //     Each quake is stored as a row of the quake store and the
+	    //     feature is dropped.  Quakes are classified as Land or Ocean
+	    //     quakes on worker threads, and their markers are built in feed
+	    //     order
 	    quakeMarkers = new ArrayList<Marker>();
+	    quakeStore = new QuakeStore(countryIndex.getCountries());
+	    if (refreshSeconds > 0) {
+	    	refresher = new FeedRefresher(this, earthquakesURL, refreshSeconds, countryIndex);
+	    	quakesByKey = new HashMap<String, EarthquakeMarker>();
+	    }
 	    
-	    for(PointFeature feature : earthquakes) {
-		  //check if LandQuake
-		  if(isLand(feature)) {
-		    quakeMarkers.add(new LandQuakeMarker(feature));
-		  }
-		  // OceanQuakes
-		  else {
-		    quakeMarkers.add(new OceanQuakeMarker(feature));
-		  }
+	    if (snapshot != null && snapshot.quakes != null) {
+	    	// already classified
+	    	for (int i = 0; i < snapshot.quakes.size(); i++) {
+	    		PointFeature feature = snapshot.quakes.get(i);
+	    		EarthquakeMarker marker = EarthquakeMarker.create(quakeStore, feature,
+	    				snapshot.quakeCountryIds[i]);
+	    		quakeMarkers.add(marker);
+	    		trackQuake(feature, snapshot.quakeUpdated.get(i), marker);
+	    	}
+	    }
+	    else {
+	    	final List<PointFeature> features = new ArrayList<PointFeature>();
+	    	final List<String> updates = new ArrayList<String>();
+	    	QuakeFeedReader earthquakes = ParseFeed.openEarthquakeFeed(this, earthquakesURL);
+	    	QuakeIngestor ingestor = new QuakeIngestor(countryIndex, ingestThreads);
+	    	quakeMarkers.addAll(ingestor.ingest(earthquakes, quakeStore, new QuakeIngestor.Listener() {
+	    		public void ingested(PointFeature feature, String updated, EarthquakeMarker marker) {
+	    			trackQuake(feature, updated, marker);
+	    			// kept for the snapshot
+	    			if (useSnapshot) {
+	    				features.add(feature);
+	    				updates.add(updated);
+	    			}
+	    		}
+	    	}));
+	    	ingestor.shutdown();
+	    	
+	    	if (sources != null && snapshot == null) {
+	    		saveSnapshot(countries, cities, features, updates, feedFile, sources);
+	    	}
 	    }
 	    
-	    buildQuakesCounts();
+	    cityIndex = ProximityIndex.ofMarkers(cityMarkers);
+	    quakeIndex = ProximityIndex.ofThreatCircles(quakeMarkers);
+	    threatTable = new CityThreatTable(cityMarkers, cityIndex);
+	    threatTable.add(quakeMarkers);
+	    impactEdges = new ImpactEdges(quakeStore, cityIndex);
+	    
+	    // quakes are shown by row and cities by position in their list
+	    quakeVisibility = new MarkerVisibility(quakeStore.size());
+	    for (Marker m : quakeMarkers) {
+	    	EarthquakeMarker quake = (EarthquakeMarker) m;
+	    	quake.setVisibility(quakeVisibility, quake.getRow());
+	    }
+	    cityVisibility = new MarkerVisibility(cityMarkers.size());
+	    for (int i = 0; i < cityMarkers.size(); i++) {
+	    	((CommonMarker) cityMarkers.get(i)).setVisibility(cityVisibility, i);
+	    }
+	    if (onlyCountry != null && !quakeStore.getCountries().contains(onlyCountry)) {
+	    	System.out.println("No country named " + onlyCountry + ", showing the quakes of every country");
+	    }
+	    applyFilters();
+	    
+	    // a feed that is not refreshed is as old as its latest quake
+	    feedTime = quakeStore.getLatestTime();
+	    
+	    report = new QuakeReport(quakeStore);
 
 	    // could be used for debugging
-	    printQuakes();
+	    report.printQuakes(System.out);
 	    
-	    sortAndPrint(20);
+	    report.sortAndPrint(20, System.out);
 	 		
 	    // (3) Add markers to map
 	    //     NOTE: Country markers are not added to the map.  They are used
 	    //           for their geometric properties
-	    map.addMarkers(quakeMarkers);
-	    map.addMarkers(cityMarkers);
+	    //     Quakes are drawn through the cluster layer or the playback,
+	    //     below the threat lines and the cities
+	    if (playback) {
+	    	quakePlayback = new QuakePlayback(quakeStore, quakeMarkers,
+	    			(long) (playbackHours * 3600000), playbackSpeed * 3600000);
+	    	MarkerManager<Marker> playbackManager = new BatchedMarkerManager();
+	    	playbackManager.setMarkers(quakePlayback.getActiveMarkers());
+	    	map.addMarkerManager(playbackManager);
+	    }
+	    else {
+	    	clusterLayer = new QuakeClusterLayer(map, quakeMarkers);
+	    	clusterLayer.setFilters(quakeVisibility);
+	    }
+	    impactLines = new ImpactLineLayer(impactEdges, cityMarkers);
+	    map.addMarkerManager(impactLines);
+	    map.addMarkerManager(new BatchedMarkerManager(cityMarkers));
+	    
+	    // quakes are searched before cities, so they win when both are hit
+	    hitLists = new ArrayList<List<Marker>>();
+	    hitLists.add((quakePlayback != null) ? quakePlayback.getActiveMarkers() : quakeMarkers);
+	    hitLists.add(cityMarkers);
+	    hitIndex = new ScreenHitIndex(map, width, height, hitLists);
+	    
+	    if (refresher != null) {
+	    	refresher.start();
+	    }
+	    
+	    viewport = new Viewport();
+	    CommonMarker.setViewport(viewport);
 	    
-	    OceanQuakeMarker.loadCityMarkers(cityMarkers, map);
+	    metrics = new FrameMetrics(metricsSeconds, (metricsLog != null) ? sketchPath(metricsLog) : null);
+	    setMetricsEnabled(metricsLog != null);
 	    
 	}  // End setup
 	
 	
+	// Registers a quake read at startup with the feed refresher
+	private void trackQuake(PointFeature feature, String updated, EarthquakeMarker marker) {
+		if (refresher != null) {
+			String key = refresher.track(feature, updated);
+			marker.setId(key);
+			quakesByKey.put(key, marker);
+		}
+	}
+	
+	// Writes what was parsed at startup for the next start; the feed is
+	// only included if it is a local file
+	private void saveSnapshot(List<Feature> countries, List<Feature> cities,
+			List<PointFeature> features, List<String> updates, File feedFile, Snapshot.Sources sources) {
+		int[] countryIds = new int[quakeStore.size()];
+		for (int row = 0; row < countryIds.length; row++) {
+			countryIds[row] = quakeStore.getCountryId(row);
+		}
+		Snapshot snapshot = new Snapshot(countries, cities,
+				(feedFile != null) ? features : null, updates, countryIds);
+		try {
+			snapshot.save(dataFile(snapshotFile), sources);
+		}
+		catch (IOException e) {
+			System.out.println("Could not write snapshot: " + e.getMessage());
+		}
+	}
+	
 	public void draw() {
+		metrics.beginFrame();
+		metrics.begin(FrameMetrics.UPDATE);
+		if (refresher != null) {
+			FeedRefresher.Update update = refresher.takeUpdate();
+			if (update != null) {
+				long start = System.nanoTime();
+				if (!update.isEmpty()) {
+					applyUpdate(update);
+				}
+				metrics.refreshed(update, System.nanoTime() - start);
+			}
+		}
+		
+		if (quakePlayback != null) {
+			// the hit index searches the active markers directly
+			if (quakePlayback.update(millis())) {
+				hitIndex.invalidate();
+			}
+			// a clicked quake that left the window, by playing on or by a
+			// restart, is unclicked and its lines are hidden
+			if (lastClicked instanceof EarthquakeMarker &&
+					!quakePlayback.isActive((EarthquakeMarker) lastClicked)) {
+				unclick();
+			}
+		}
+		// clusters are only drawn while no marker is clicked
+		else if (clusterLayer.update(lastClicked == null)) {
+			hitLists.set(0, clusterLayer.getVisibleMarkers());
+			hitIndex.invalidate();
+		}
+		// the X marks quakes of the day before the playhead, before now for
+		// a live feed, or before the latest quake of a feed read once
+		if (quakePlayback != null) {
+			EarthquakeMarker.setReferenceTime(quakePlayback.getPlayhead());
+		}
+		else if (refresher != null) {
+			EarthquakeMarker.setReferenceTime(System.currentTimeMillis());
+		}
+		else {
+			EarthquakeMarker.setReferenceTime(feedTime);
+		}
+		viewport.update(map);
+		metrics.end(FrameMetrics.UPDATE);
+		
 		background(0);
+		metrics.begin(FrameMetrics.MAP);
 		map.draw();
+		metrics.end(FrameMetrics.MAP);
+		metrics.begin(FrameMetrics.KEY);
 		addKey();
+		metrics.end(FrameMetrics.KEY);
 		
 		if (cityClicked) {
+			metrics.begin(FrameMetrics.POPUP);
 			addPopup();
+			metrics.end(FrameMetrics.POPUP);
+		}
+		if (quakePlayback != null) {
+			quakePlayback.draw(g, 200, 660);
+		}
+		metrics.endFrame();
+		
+		if (showMetrics) {
+			metrics.draw(g, 205, 55);
+		}
+	}
+	
+	/** Toggles the frame metrics overlay and controls the playback */
+	@Override
+	public void keyPressed() {
+		if (key == metricsKey) {
+			showMetrics = !showMetrics;
+			setMetricsEnabled(showMetrics || metricsLog != null);
+		}
+		else if (quakePlayback != null) {
+			if (key == playKey) {
+				quakePlayback.togglePlaying();
+			}
+			else if (key == slowerKey) {
+				quakePlayback.changeSpeed(0.5);
+			}
+			else if (key == fasterKey) {
+				quakePlayback.changeSpeed(2);
+			}
+			else if (key == restartKey) {
+				quakePlayback.restart();
+				hitIndex.invalidate();
+			}
 		}
 	}
 	
+	private void setMetricsEnabled(boolean enabled) {
+		if (enabled != metrics.isEnabled()) {
+			metrics.setEnabled(enabled);
+			CommonMarker.setMetrics(enabled ? metrics : null);
+		}
+	}
 	
-	private void sortAndPrint(int numToPrint) {
-		List<EarthquakeMarker> quakeList = new ArrayList<EarthquakeMarker>();
-		for (Marker quake : quakeMarkers) {
-			quakeList.add((EarthquakeMarker) quake);
+	
+	// Merges the quakes added and removed by a feed refresh into the map,
+	// keeping the current click selection
+	private void applyUpdate(FeedRefresher.Update update) {
+		List<EarthquakeMarker> removed = new ArrayList<EarthquakeMarker>();
+		for (String key : update.removed) {
+			EarthquakeMarker m = quakesByKey.remove(key);
+			removed.add(m);
+			quakeStore.remove(m.getRow());
+			if (m == lastClicked) {
+				cityClicked = false;
+				lastClicked.setClicked(false);
+				lastClicked = null;
+			}
+			if (m == lastSelected) {
+				lastSelected = null;
+			}
 		}
-		Collections.sort(quakeList);
-		if (numToPrint > quakeList.size()) {
-			numToPrint = quakeList.size();
+		quakeMarkers.removeAll(new HashSet<Marker>(removed));
+		
+		List<EarthquakeMarker> added = new ArrayList<EarthquakeMarker>();
+		for (FeedRefresher.Entry entry : update.added) {
+			EarthquakeMarker m = EarthquakeMarker.create(quakeStore, entry.feature, entry.countryId);
+			m.setId(entry.key);
+			quakesByKey.put(entry.key, m);
+			added.add(m);
+			quakeMarkers.add(m);
+		}
+		// the threat table reads the removed quakes' circles from their
+		// rows, so it is updated before compaction gives the rows away
+		quakeIndex = ProximityIndex.ofThreatCircles(quakeMarkers);
+		threatTable.update(removed, added, quakeMarkers, quakeIndex);
+		if (quakeStore.needsCompaction()) {
+			compactQuakes();
+		}
+		// new quakes pass the filters if they match them, and are outside
+		// the focus until it is set again below
+		quakeVisibility.grow(quakeStore.size());
+		for (EarthquakeMarker m : added) {
+			m.setVisibility(quakeVisibility, m.getRow());
+		}
+		applyFilters();
+		// the cluster layer and the playback draw quakeMarkers themselves
+		if (quakePlayback != null) {
+			quakePlayback.rebuild();
 		}
-		for (int i=0;i<numToPrint;i++) {
-			System.out.println(quakeList.get(i));;
+		else {
+			clusterLayer.rebuild();
 		}
+		impactEdges.extend();
+		hitIndex.invalidate();
+		selectMarkersInThreatRadius();
+		
+		report.buildQuakesCounts();
+	}
+	
+	// Reclaims the rows of removed quakes, and moves the markers, the
+	// visibility and the impact edges to the rows the quakes moved to.  The
+	// playback and the other indexes are rebuilt from the store afterwards.
+	private void compactQuakes() {
+		int[] newRows = quakeStore.compact();
+		quakeVisibility.remap(newRows, quakeStore.size());
+		for (Marker m : quakeMarkers) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			quake.setRow(newRows[quake.getRow()]);
+			quake.setVisibility(quakeVisibility, quake.getRow());
+		}
+		impactEdges.compact(newRows);
 	}
 	
 	/** Event handler that gets called automatically when the 
@@ -176,22 +543,22 @@ public class EarthquakeCityMap extends PApplet {
 			lastSelected = null;
 		
 		}
-		selectMarkerIfHover(quakeMarkers);
-		selectMarkerIfHover(cityMarkers);
+		selectMarkerIfHover();
 		//loop();
 	}
 	
 	// If there is a marker under the cursor, and lastSelected is null 
 	// set the lastSelected to be the first marker found under the cursor
 	// Make sure you do not select two markers.
-	// 
-	private void selectMarkerIfHover(List<Marker> markers)
+	// The hit index only tests the markers near the cursor.
+	private void selectMarkerIfHover()
 	{
-		for (Marker marker : markers) {
-			if (marker.isInside(map, mouseX, mouseY) && lastSelected == null) {
-				lastSelected = (CommonMarker) marker;
-				marker.setSelected(true);
-			}
+		metrics.begin(FrameMetrics.HIT_TEST);
+		Marker marker = hitIndex.firstHit(mouseX, mouseY);
+		metrics.end(FrameMetrics.HIT_TEST);
+		if (marker != null && lastSelected == null) {
+			lastSelected = (CommonMarker) marker;
+			marker.setSelected(true);
 		}
 	}
 	
@@ -205,78 +572,91 @@ public class EarthquakeCityMap extends PApplet {
 	{
 		if (lastClicked == null) {
 			
-			selectMarkerIfClicked(quakeMarkers);
-			selectMarkerIfClicked(cityMarkers);
+			metrics.begin(FrameMetrics.HIT_TEST);
+			Marker hit = hitIndex.firstHit(mouseX, mouseY);
+			metrics.end(FrameMetrics.HIT_TEST);
+			if (hit instanceof ClusterMarker) {
+				clusterLayer.expand((ClusterMarker) hit);
+				return;
+			}
+			if (hit != null) {
+				lastClicked = (CommonMarker) hit;
+				lastClicked.setClicked(true);
+			}
 			
 			selectMarkersInThreatRadius();
 			
 		}
 		else {
-			cityClicked = false;
-			
-			lastClicked = null;
-			unhideMarkers();
-			
-			unClick(quakeMarkers);
-			unClick(cityMarkers);
+			unclick();
 		}
 	}
 	
-	private void unClick(List<Marker> markers) {
-		for (Marker m : markers) {
-			((CommonMarker)m).setClicked(false);
-		}
+	// Clears the click and shows every marker that passes the filters
+	private void unclick() {
+		cityClicked = false;
+		
+		lastClicked.setClicked(false);
+		lastClicked = null;
+		impactLines.show(null);
+		unhideMarkers();
 	}
 	
+	// Shows only the clicked marker and the markers within the threat
+	// circle, by setting the focus of the quake and city visibility sets
 	private void selectMarkersInThreatRadius() {
 		if (!(lastClicked == null)) {
+			BitSet quakes = new BitSet();
+			BitSet cities = new BitSet();
 			if (lastClicked.getClass() == CityMarker.class) {
 				
 				cityClicked = true;
+				impactLines.show(null);
 				
-				for (Marker m : quakeMarkers) {
-					if (m.getDistanceTo(lastClicked.getLocation()) <=
-							((EarthquakeMarker)m).threatCircle()) {
-						m.setHidden(false);
-					}
+				// quakes whose threat circle covers the city
+				cities.set(lastClicked.getVisibilityIndex());
+				for (int i : quakeIndex.covering(lastClicked.getLocation())) {
+					quakes.set(((EarthquakeMarker) quakeMarkers.get(i)).getRow());
 				}
 			}
 			else {
-				for (Marker m : cityMarkers) {
-					if (m.getDistanceTo(lastClicked.getLocation()) <=
-							((EarthquakeMarker)lastClicked).threatCircle()) {
-						m.setHidden(false);
-					}
+				// cities inside the quake's threat circle, with a line to each
+				EarthquakeMarker quake = (EarthquakeMarker) lastClicked;
+				quakes.set(quake.getRow());
+				for (int i : impactEdges.getCities(quake.getRow())) {
+					cities.set(i);
 				}
+				impactLines.show(quake);
 			}
+			quakeVisibility.setFocus(quakes);
+			cityVisibility.setFocus(cities);
+			hitIndex.invalidate();
 		}
 		else {
+			impactLines.show(null);
 			unhideMarkers();
 		}
 	}
 	
-	private void selectMarkerIfClicked(List<Marker> markers) {
-		for (Marker m : markers) {
-			if (m.isInside(map, mouseX, mouseY) && (lastClicked == null)) {
-				lastClicked = (CommonMarker) m;
-				m.setHidden(false);
-				((CommonMarker)m).setClicked(true);
-			}
-			else {
-				m.setHidden(true);
-				((CommonMarker)m).setClicked(false);
-			}
-		}
+	// Shows every marker that passes the filters
+	private void unhideMarkers() {
+		quakeVisibility.clearFocus();
+		cityVisibility.clearFocus();
+		hitIndex.invalidate();
 	}
 	
-	// loop over and unhide all markers
-	private void unhideMarkers() {
-		for(Marker marker : quakeMarkers) {
-			marker.setHidden(false);
+	// Sets the quake filters from minMagnitude and onlyCountry
+	private void applyFilters() {
+		if (minMagnitude > 0) {
+			quakeVisibility.setFilter("magnitude", QuakeFilters.magnitudeAtLeast(quakeStore, minMagnitude));
 		}
-			
-		for(Marker marker : cityMarkers) {
-			marker.setHidden(false);
+		if (onlyCountry != null && quakeStore.getCountries().contains(onlyCountry)) {
+			quakeVisibility.setFilter("country", QuakeFilters.country(quakeStore,
+					quakeStore.getCountries().getId(onlyCountry)));
+		}
+		// the hit index is built after the first filters are set
+		if (hitIndex != null) {
+			hitIndex.invalidate();
 		}
 	}
 	
@@ -291,29 +671,11 @@ public class EarthquakeCityMap extends PApplet {
 		
 		rect(xbase, ybase, 150, 300);
 		
-		CityMarker lastClickedEq = (CityMarker) lastClicked;
-		int numNear = 0;
-		float aveMag = 0;
-		EarthquakeMarker mostRecent = null;
-		float sumMag = 0;
-		EarthquakeMarker n;
-		for (Marker m : quakeMarkers) {
-			n = (EarthquakeMarker) m;
-			if (lastClickedEq.getDistanceTo(n.getLocation()) <=
-					(n.threatCircle())) {
-				if (mostRecent == null) {
-					mostRecent = n;
-				}
-				numNear++;
-				sumMag += n.getMagnitude();
-				if (compAge(mostRecent,n)>0) {
-					mostRecent = n;
-				}
-			}
-		}
-		if (numNear > 0) {
-			aveMag = sumMag/numNear;
-		}
+		// precomputed when the quakes were loaded or last changed
+		CityThreatTable.Summary summary = threatTable.get(lastClicked);
+		int numNear = summary.getCount();
+		float aveMag = summary.getMeanMagnitude();
+		EarthquakeMarker mostRecent = summary.getMostRecent();
 		
 		fill(0,0,0);
 		
@@ -339,41 +701,6 @@ public class EarthquakeCityMap extends PApplet {
 		
 	}
 	
-	private int compAge(EarthquakeMarker quake1, EarthquakeMarker quake2) {
-		int lessThan;
-		String age1 = quake1.getStringProperty("age");
-		String age2 = quake2.getStringProperty("age");
-		int ageNum1 = stringAgeToInt(age1);
-		int ageNum2 = stringAgeToInt(age2);
-		if (ageNum1 > ageNum2) {
-			lessThan = 1;
-		}
-		else if (ageNum1 < ageNum2) {
-			lessThan = -1;
-		}
-		else {
-			lessThan = 0;
-		}
-		return lessThan;
-	}
-	
-	private int stringAgeToInt(String age) {
-		int numAge = 24*7*52;
-		if (age.equals("Past Hour")) {
-			numAge = 1;
-		}
-		else if (age.equals("Past Day")) {
-			numAge = 24;
-		}
-		else if (age.equals("Past Week")) {
-			numAge = 24*7;
-		}
-		else if (age.equals("Past Month")) {
-			numAge = 24*30;
-		}
-		return numAge;
-	}
-	
 	// helper method to draw key in GUI
 	private void addKey() {	
 		// Remember you can use Processing's graphics methods here
@@ -426,96 +753,4 @@ public class EarthquakeCityMap extends PApplet {
 			
 	}
 
-	
-	
-	// Checks whether this quake occurred on land.  If it did, it sets the 
-	// "country" property of its PointFeature to the country where it occurred
-	// and returns true.  Notice that the helper method isInCountry will
-	// set this "country" property already.  Otherwise it returns false.	
-	private boolean isLand(PointFeature earthquake) {
-		
-		// Loop over all the country markers.  
-		// For each, check if the earthquake PointFeature is in the 
-		// country in m.  Notice that isInCountry takes a PointFeature
-		// and a Marker as input.  
-		// If isInCountry ever returns true, isLand should return true.
-		for (Marker m : countryMarkers) {
-			if (isInCountry(earthquake, m)) {
-				return true;
-			}
-		}
-		
-		// not inside any country
-		return false;
-	}
-	
-	private void buildQuakesCounts() {
-		quakeCount = new HashMap<String, Integer>();
-		for (Marker quake : quakeMarkers) {
-			if (((EarthquakeMarker)quake).isOnLand()) {
-				String country = ((LandQuakeMarker)quake).getCountry();
-				if (quakeCount.containsKey(country)) {
-					quakeCount.put(country, quakeCount.get(country)+1);
-				}
-				else {
-					quakeCount.put(country, 1);
-				}
-			}
-			else {
-				if (quakeCount.containsKey("OCEAN QUAKES")) {
-					quakeCount.put("OCEAN QUAKES", quakeCount.get("OCEAN QUAKES")+1);
-				}
-				else {
-					quakeCount.put("OCEAN QUAKES", 1);
-				}
-			}
-		}
-	}
-	
-	// prints countries with number of earthquakes
-	private void printQuakes() {
-		for (String countryKey : quakeCount.keySet()) {
-			if (!countryKey.equals("OCEAN QUAKES")) {
-				System.out.println(countryKey + ": " + quakeCount.get(countryKey));
-			}
-		}
-		System.out.println("OCEAN QUAKES: " + quakeCount.get("OCEAN QUAKES"));
-	}
-	
-	
-	
-	// helper method to test whether a given earthquake is in a given country
-	// This will also add the country property to the properties of the earthquake feature if 
-	// it's in one of the countries.
-	// You should not have to modify this code
-	private boolean isInCountry(PointFeature earthquake, Marker country) {
-		// getting location of feature
-		Location checkLoc = earthquake.getLocation();
-
-		// some countries represented it as MultiMarker
-		// looping over SimplePolygonMarkers which make them up to use isInsideByLoc
-		if(country.getClass() == MultiMarker.class) {
-				
-			// looping over markers making up MultiMarker
-			for(Marker marker : ((MultiMarker)country).getMarkers()) {
-					
-				// checking if inside
-				if(((AbstractShapeMarker)marker).isInsideByLocation(checkLoc)) {
-					earthquake.addProperty("country", country.getProperty("name"));
-						
-					// return if is inside one
-					return true;
-				}
-			}
-		}
-			
-		// check if inside country represented by SimplePolygonMarker
-		else if(((AbstractShapeMarker)country).isInsideByLocation(checkLoc)) {
-			earthquake.addProperty("country", country.getProperty("name"));
-			
-			return true;
-		}
-		return false;
-	}
-
 }
@@ -16,16 +16,22 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	// Did the earthquake occur on land?  This will be set by the subclasses.
 	protected boolean isOnLand;
 
-	// The radius of the Earthquake marker
-	// You will want to set this in the constructor, either
-	// using the thresholds below, or a continuous function
-	// based on magnitude. 
-	protected float radius;
+	// The quake's values are read from its row in the store; the marker
+	// keeps no copy of the feed's property map
+	protected QuakeStore store;
+	protected int row;
 	
 	
 	// constants for distance
 	protected static final float kmPerMile = 1.6f;
 	
+	// Quakes less than this old at the reference time are drawn with an X
+	private static final long DAY_MILLIS = 24*3600*1000L;
+	
+	// The time quake ages are measured at, or QuakeStore.NO_TIME for the
+	// current time
+	private static long referenceTime = QuakeStore.NO_TIME;
+	
 	/** Greater than or equal to this threshold is a moderate earthquake */
 	public static final float THRESHOLD_MODERATE = 5;
 	/** Greater than or equal to this threshold is a light earthquake */
@@ -44,23 +50,36 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 		
 	
 	// constructor
-	public EarthquakeMarker (PointFeature feature) 
+	public EarthquakeMarker (QuakeStore store, int row) 
 	{
-		super(feature.getLocation());
-		// Add a radius property and then set the properties
-		java.util.HashMap<String, Object> properties = feature.getProperties();
-		float magnitude = Float.parseFloat(properties.get("magnitude").toString());
-		properties.put("radius", 2*magnitude );
-		setProperties(properties);
-		this.radius = 1.75f*getMagnitude();
+		super(store.getLocation(row));
+		this.store = store;
+		this.row = row;
+	}
+	
+	/** Adds the quake to the store and builds a land or ocean marker for it
+	 *
+	 * @param countryId - the country the quake is in, or QuakeStore.OCEAN
+	 */
+	public static EarthquakeMarker create(QuakeStore store, PointFeature feature, int countryId) {
+		int row = store.add(feature, countryId);
+		//check if LandQuake
+		if (store.isOnLand(row)) {
+			return new LandQuakeMarker(store, row);
+		}
+		// OceanQuakes
+		else {
+			return new OceanQuakeMarker(store, row);
+		}
 	}
 	
 	public int compareTo(EarthquakeMarker marker) {
 		int lessThan;
-		if (getMagnitude() > marker.getMagnitude()) {
+		float magnitude = getMagnitude();
+		if (magnitude > marker.getMagnitude()) {
 			lessThan = -1;
 		}
-		else if (getMagnitude() < marker.getMagnitude()) {
+		else if (magnitude < marker.getMagnitude()) {
 			lessThan = 1;
 		}
 		else {
@@ -70,29 +89,47 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	}
 	
 	
-	// calls abstract method drawEarthquake and then checks age and draws X if needed
+	// The fill of each depth, as colorDetermine sets it, used as style key
+	private static final int SHALLOW_COLOR = 0xFFFFFF00;
+	private static final int INTERMEDIATE_COLOR = 0xFF0000FF;
+	private static final int DEEP_COLOR = 0xFFFF0000;
+	
+	// markers of the same depth color are drawn in the same style
 	@Override
-	public void drawMarker(PGraphics pg, float x, float y) {
-		// save previous styling
-		pg.pushStyle();
-			
-		// determine color of marker from depth
+	public int getStyleKey() {
+		float depth = getDepth();
+		if (depth < THRESHOLD_INTERMEDIATE) {
+			return SHALLOW_COLOR;
+		}
+		return (depth < THRESHOLD_DEEP) ? INTERMEDIATE_COLOR : DEEP_COLOR;
+	}
+	
+	// determine color of marker from depth
+	@Override
+	public void applyStyle(PGraphics pg) {
 		colorDetermine(pg);
-		
-		// call abstract method implemented in child class to draw marker shape
+	}
+	
+	// call abstract method implemented in child class to draw marker shape
+	@Override
+	public void drawShape(PGraphics pg, float x, float y) {
 		drawEarthquake(pg, x, y);
-		
-		// Draw X over marker if within past day
+	}
+	
+	// an X is drawn over quakes of the past day
+	@Override
+	public boolean hasDecoration() {
+		return isPastDay();
+	}
+	
+	// Draw X over marker
+	@Override
+	public void drawDecoration(PGraphics pg, float x, float y) {
 		pg.stroke(0,0,0);
 		pg.strokeWeight(2);
-		if (getAge().equals("Past Hour") || getAge().equals("Past Day")) {
-			pg.line((x-getRadius()*0.75f),(y-getRadius()*0.75f),(x+getRadius()*0.75f),(y+getRadius()*0.75f));
-			pg.line((x+getRadius()*0.75f),(y-getRadius()*0.75f),(x-getRadius()*0.75f),(y+getRadius()*0.75f));
-		}
-		
-		// reset to previous styling
-		pg.popStyle();
-		
+		float radius = getRadius();
+		pg.line((x-radius*0.75f),(y-radius*0.75f),(x+radius*0.75f),(y+radius*0.75f));
+		pg.line((x+radius*0.75f),(y-radius*0.75f),(x-radius*0.75f),(y+radius*0.75f));
 	}
 
 	/** Show the title of the earthquake if this marker is selected */
@@ -120,19 +157,53 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	 *  or predictive applications.
 	 */
 	public double threatCircle() {	
-		double miles = 20.0f * Math.pow(1.8, 2*getMagnitude()-5);
-		double km = (miles * kmPerMile);
-		return km;
+		// computed by the store as 20 * 1.8^(2*magnitude-5) miles, in km
+		return store.getThreatRadius(row);
+	}
+	
+	/** Sets the time the past day is measured back from: the playhead during
+	 * playback, the current time while the feed is refreshed, and otherwise
+	 * the time of the feed's latest quake, so a saved feed keeps its X's.
+	 * QuakeStore.NO_TIME reads the clock on every call.
+	 */
+	public static void setReferenceTime(long millis) {
+		referenceTime = millis;
+	}
+	
+	/** Returns true if the quake occurred less than a day before the
+	 * reference time.  Quakes without a time fall back to the feed's age
+	 * label, which was only right when the feed was read.
+	 */
+	public boolean isPastDay() {
+		long time = getTime();
+		if (time == QuakeStore.NO_TIME) {
+			return getQuakeAge().isPastDay();
+		}
+		long now = (referenceTime == QuakeStore.NO_TIME) ? System.currentTimeMillis() : referenceTime;
+		return now - time < DAY_MILLIS;
+	}
+	
+	/** Returns true if this earthquake occurred more recently than the other.
+	 * Quakes are compared by time, or by age category if either has no time.
+	 */
+	public boolean isMoreRecentThan(EarthquakeMarker other) {
+		long time = getTime();
+		long otherTime = other.getTime();
+		if (time == QuakeStore.NO_TIME || otherTime == QuakeStore.NO_TIME) {
+			return getQuakeAge().getHours() < other.getQuakeAge().getHours();
+		}
+		return time > otherTime;
 	}
 	
 	// determine color of marker from depth
 	// We use: Deep = red, intermediate = blue, shallow = yellow
 	private void colorDetermine(PGraphics pg) {
-		if (getDepth() < THRESHOLD_INTERMEDIATE) {
+		float depth = getDepth();
+		if (depth < THRESHOLD_INTERMEDIATE) {
 			pg.fill(255,255,0);
 		}
 		else {
-			if (getDepth() < THRESHOLD_DEEP) {
+			if (depth < THRESHOLD_DEEP) {
 				pg.fill(0,0,255);
 			}
 			else {
@@ -155,24 +226,46 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	 */
 	
 	public float getMagnitude() {
-		return Float.parseFloat(getProperty("magnitude").toString());
+		return store.getMagnitude(row);
 	}
 	
 	public float getDepth() {
-		return Float.parseFloat(getProperty("depth").toString());	
+		return store.getDepth(row);
 	}
 	
 	public String getTitle() {
-		return (String) getProperty("title");	
+		return store.getTitle(row);
 		
 	}
 	
+	// The radius of the Earthquake marker, set from the magnitude
 	public float getRadius() {
-		return Float.parseFloat(getProperty("radius").toString());
+		return 2*store.getMagnitude(row);
 	}
 	
 	public String getAge() {
-		return (String) getProperty("age");
+		return getQuakeAge().getTerm();
+	}
+	
+	/** When the quake occurred, in milliseconds since the epoch, or
+	 * QuakeStore.NO_TIME
+	 */
+	public long getTime() {
+		return store.getTime(row);
+	}
+	
+	public QuakeAge getQuakeAge() {
+		return store.getAge(row);
+	}
+	
+	/** The marker's row in the quake store */
+	public int getRow() {
+		return row;
+	}
+	
+	/** Moves the marker to its new row after QuakeStore.compact */
+	void setRow(int row) {
+		this.row = row;
 	}
 	
 	public boolean isOnLand()
@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import parsing.ParseFeed;
+import parsing.QuakeFeedReader;
+import processing.core.PApplet;
+
+/** Re-polls the earthquake feed in the background and works out what changed
+ *
+ * Each poll streams the feed and compares its entries, by Atom id and
+ * <updated> timestamp, with the entries seen by the previous poll.  Only new
+ * and revised entries are classified as land or ocean quakes; entries that
+ * have left the feed are reported as removed.  The result of a poll is handed
+ * over as an Update, which the sketch applies on its animation thread, so
+ * draw() never waits for the network.  Entries are identified by key, and
+ * markers are only built by the sketch, which owns the quake store.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class FeedRefresher implements Runnable {
+
+	/** A new or revised entry of the feed, classified */
+	public static class Entry {
+		public final String key;
+		public final PointFeature feature;
+		public final int countryId;
+
+		private Entry(String key, PointFeature feature, int countryId) {
+			this.key = key;
+			this.feature = feature;
+			this.countryId = countryId;
+		}
+	}
+
+	/** The changes found by one poll of the feed, or by the polls the sketch
+	 * has not taken yet.  A revised entry's key is both removed and added.
+	 */
+	public static class Update {
+		public final List<Entry> added = new ArrayList<Entry>();
+		public final List<String> removed = new ArrayList<String>();
+		public int entries;
+		public int updated;
+		public long parseMillis;
+		public long classifyMillis;
+
+		public boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty();
+		}
+
+		/** Number of entries that were not in the feed before */
+		public int getNew() {
+			return added.size() - updated;
+		}
+
+		/** Number of entries that have left the feed */
+		public int getExpired() {
+			return removed.size() - updated;
+		}
+	}
+
+	private PApplet p;
+	private String feed;
+	private long intervalMillis;
+	private CountryIndex countryIndex;
+
+	// the <updated> seen for each entry of the last poll, by key
+	private HashMap<String, String> versions = new HashMap<String, String>();
+
+	// the latest poll result not yet taken by the sketch
+	private Update pending;
+
+	private volatile boolean running;
+
+	/**
+	 * @param p - PApplet used to open the feed
+	 * @param feed - file name or URL of the feed
+	 * @param intervalSeconds - time between polls
+	 * @param countryIndex - index used to classify new quakes
+	 */
+	public FeedRefresher(PApplet p, String feed, int intervalSeconds, CountryIndex countryIndex) {
+		this.p = p;
+		this.feed = feed;
+		this.intervalMillis = intervalSeconds * 1000L;
+		this.countryIndex = countryIndex;
+	}
+
+	/** Registers a quake already on the map, so it is not added again, and
+	 * returns the key later updates refer to it by.  Must be called before
+	 * start.
+	 *
+	 * @param feature - the quake as read from the feed
+	 * @param version - the entry's <updated> timestamp
+	 */
+	public String track(PointFeature feature, String version) {
+		String key = keyOf(feature);
+		versions.put(key, version);
+		return key;
+	}
+
+	/** Starts polling on a daemon thread */
+	public void start() {
+		running = true;
+		Thread thread = new Thread(this, "FeedRefresher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	public void run() {
+		while (running) {
+			try {
+				Thread.sleep(intervalMillis);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			try {
+				Update update = poll();
+				synchronized (this) {
+					if (pending == null) {
+						pending = update;
+					}
+					else {
+						merge(pending, update);
+					}
+				}
+			}
+			catch (RuntimeException e) {
+				System.out.println("Feed refresh failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/** Returns the changes found by the polls since the last call, which may
+	 * be empty, or null if no poll has finished since.  Called from draw();
+	 * it never waits for a poll in progress.
+	 */
+	public synchronized Update takeUpdate() {
+		Update update = pending;
+		pending = null;
+		return update;
+	}
+
+	/** Reads the feed once and works out what changed since the last poll.
+	 * The version bookkeeping is only touched by the polling thread.
+	 */
+	public Update poll() {
+		Update update = new Update();
+		long start = System.currentTimeMillis();
+
+		List<PointFeature> changed = new ArrayList<PointFeature>();
+		List<String> changedVersions = new ArrayList<String>();
+		Set<String> seen = new HashSet<String>();
+
+		QuakeFeedReader reader = ParseFeed.openEarthquakeFeed(p, feed);
+		while (reader.hasNext()) {
+			PointFeature feature = reader.next();
+			String key = keyOf(feature);
+			String version = reader.getUpdated();
+			update.entries++;
+			seen.add(key);
+			if (!versions.containsKey(key) || !same(versions.get(key), version)) {
+				changed.add(feature);
+				changedVersions.add(version);
+			}
+		}
+
+		// only new and revised entries are classified
+		long classifyStart = System.currentTimeMillis();
+		for (int i = 0; i < changed.size(); i++) {
+			PointFeature feature = changed.get(i);
+			String key = keyOf(feature);
+			if (versions.containsKey(key)) {
+				update.removed.add(key);
+				update.updated++;
+			}
+			versions.put(key, changedVersions.get(i));
+			update.added.add(new Entry(key, feature,
+					countryIndex.findCountryId(feature.getLocation())));
+		}
+		long classifyEnd = System.currentTimeMillis();
+
+		List<String> expired = new ArrayList<String>();
+		for (String key : versions.keySet()) {
+			if (!seen.contains(key)) {
+				expired.add(key);
+			}
+		}
+		for (String key : expired) {
+			update.removed.add(key);
+			versions.remove(key);
+		}
+
+		update.classifyMillis = classifyEnd - classifyStart;
+		update.parseMillis = System.currentTimeMillis() - start - update.classifyMillis;
+		return update;
+	}
+
+	// folds a newer poll into one the sketch has not taken yet
+	private static void merge(Update into, Update update) {
+		for (String key : update.removed) {
+			// an entry added and removed before the sketch saw it never existed
+			if (!removeEntry(into.added, key)) {
+				into.removed.add(key);
+			}
+		}
+		into.added.addAll(update.added);
+		into.entries = update.entries;
+		// an entry is revised if its key is still both removed and added;
+		// cancelled adds make the polls' own counts too high
+		Set<String> removed = new HashSet<String>(into.removed);
+		into.updated = 0;
+		for (Entry entry : into.added) {
+			if (removed.contains(entry.key)) {
+				into.updated++;
+			}
+		}
+		into.parseMillis += update.parseMillis;
+		into.classifyMillis += update.classifyMillis;
+	}
+
+	private static boolean removeEntry(List<Entry> entries, String key) {
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).key.equals(key)) {
+				entries.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// entries are identified by their Atom id, or by title if they have none
+	private static String keyOf(PointFeature feature) {
+		String id = feature.getId();
+		return (id != null) ? id : feature.getStringProperty("title");
+	}
+
+	private static boolean same(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
@@ -0,0 +1,317 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/** Per-frame timings and counters of the sketch
+ *
+ * The sketch brackets each section of a frame with begin and end, and
+ * CommonMarker reports every marker it draws, skips because it is hidden
+ * ("culled") or skips because it is outside the viewport ("offscreen").  Time spent in the
+ * tiles is the time of map.draw less the time spent drawing markers inside
+ * it.  Hit-testing runs in the mouse handlers, between frames, and is counted
+ * in the frame that follows.
+ *
+ * Frames are summed over a window of a fixed length.  When a window closes,
+ * the averages per frame, the bytes allocated per second by the animation
+ * thread and the garbage collections during the window become the values
+ * shown by draw, and are appended to the log file if there is one.  The log
+ * is written as CSV, or as one JSON object per line if the file name ends in
+ * ".json".
+ *
+ * The refresh columns are those of the last feed refresh the sketch took:
+ * the entries in the feed, the new, revised and expired ones, the time the
+ * poll spent parsing and classifying, and the time the sketch spent merging
+ * the changes into the map.  They are kept from window to window until the
+ * next refresh.
+ *
+ * Nothing is measured while the metrics are disabled, except refreshes, and
+ * markers only report to the metrics given to CommonMarker.setMetrics.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class FrameMetrics {
+
+	/** Sections of a frame */
+	public static final int UPDATE = 0;
+	public static final int MAP = 1;
+	public static final int KEY = 2;
+	public static final int POPUP = 3;
+	public static final int HIT_TEST = 4;
+	private static final int SECTIONS = 5;
+
+	// Reported columns; tiles and markers split the MAP section
+	private static final String[] COLUMNS = { "frames", "fps", "update_ms", "tiles_ms", "markers_ms",
+			"key_ms", "popup_ms", "hit_test_ms", "frame_ms", "drawn", "culled", "offscreen", "alloc_mb_per_s",
+			"gc_count", "gc_ms", "refresh_entries", "refresh_new", "refresh_updated", "refresh_expired",
+			"refresh_parse_ms", "refresh_classify_ms", "refresh_apply_ms" };
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private long windowNanos;
+	private boolean enabled;
+
+	// the current window
+	private long windowStart;
+	private int frames;
+	private long frameStart;
+	private long[] sectionStart = new long[SECTIONS];
+	private long[] sectionNanos = new long[SECTIONS];
+	private long markerNanos;
+	private long frameNanos;
+	private long drawn;
+	private long culled;
+	private long offscreen;
+	private long allocatedAtStart;
+	private long gcCountAtStart;
+	private long gcMillisAtStart;
+
+	// the last feed refresh, or -1 before the first
+	private double[] refresh = { -1, -1, -1, -1, -1, -1, -1 };
+
+	// averages of the last closed window, in the order of COLUMNS
+	private double[] values;
+
+	private String logFile;
+	private PrintWriter log;
+
+	/**
+	 * @param windowSeconds - length of the window the values are averaged
+	 *        over and logged at
+	 * @param logFile - file to append every window's values to, or null
+	 */
+	public FrameMetrics(float windowSeconds, String logFile) {
+		windowNanos = (long) (windowSeconds * 1e9);
+		this.logFile = logFile;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/** Starts or stops measuring; a new window starts with the next frame */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		windowStart = 0;
+		values = null;
+	}
+
+	public void beginFrame() {
+		if (!enabled) {
+			return;
+		}
+		frameStart = System.nanoTime();
+		if (windowStart == 0) {
+			startWindow(frameStart);
+		}
+	}
+
+	public void endFrame() {
+		if (!enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		frameNanos += now - frameStart;
+		frames++;
+		if (now - windowStart >= windowNanos) {
+			closeWindow(now);
+			startWindow(now);
+		}
+	}
+
+	public void begin(int section) {
+		if (enabled) {
+			sectionStart[section] = System.nanoTime();
+		}
+	}
+
+	public void end(int section) {
+		if (enabled) {
+			sectionNanos[section] += System.nanoTime() - sectionStart[section];
+		}
+	}
+
+	/** Called by a marker after drawing itself */
+	public void markerDrawn(long nanos) {
+		markerNanos += nanos;
+		drawn++;
+	}
+
+	/** Called by a MarkerBatch after drawing a number of markers */
+	public void markersDrawn(int count, long nanos) {
+		markerNanos += nanos;
+		drawn += count;
+	}
+
+	/** Called by a hidden marker, which was not drawn */
+	public void markerCulled() {
+		culled++;
+	}
+
+	/** Called by a marker that was not drawn because it is off screen */
+	public void markerOffscreen() {
+		offscreen++;
+	}
+
+	/** Called by the sketch after it took a feed refresh, with the time it
+	 * spent applying it; also while the metrics are disabled
+	 */
+	public void refreshed(FeedRefresher.Update update, long applyNanos) {
+		refresh = new double[] {
+				update.entries,
+				update.getNew(),
+				update.updated,
+				update.getExpired(),
+				update.parseMillis,
+				update.classifyMillis,
+				applyNanos / 1e6
+		};
+	}
+
+	/** Draws the values of the last window in a box at the given position */
+	public void draw(PGraphics pg, float x, float y) {
+		pg.pushStyle();
+		pg.noStroke();
+		pg.fill(0, 180);
+		pg.rect(x, y, 190, 15*COLUMNS.length + 10);
+		pg.fill(255);
+		pg.textAlign(PConstants.LEFT, PConstants.TOP);
+		pg.textSize(11);
+		for (int i = 0; i < COLUMNS.length; i++) {
+			String value = (values == null) ? "..." : format(values[i]);
+			pg.text(COLUMNS[i] + ": " + value, x + 5, y + 5 + 15*i);
+		}
+		pg.popStyle();
+	}
+
+	/** The values of the last window, in the order of getColumns, or null
+	 * if no window has closed since the metrics were enabled
+	 */
+	public double[] getValues() {
+		return (values == null) ? null : values.clone();
+	}
+
+	public static String[] getColumns() {
+		return COLUMNS.clone();
+	}
+
+	/** Closes the log file */
+	public void close() {
+		if (log != null) {
+			log.close();
+			log = null;
+		}
+	}
+
+	private void startWindow(long now) {
+		windowStart = now;
+		frames = 0;
+		for (int s = 0; s < SECTIONS; s++) {
+			sectionNanos[s] = 0;
+		}
+		markerNanos = 0;
+		frameNanos = 0;
+		drawn = 0;
+		culled = 0;
+		offscreen = 0;
+		allocatedAtStart = allocatedBytes();
+		gcCountAtStart = gcCount();
+		gcMillisAtStart = gcMillis();
+	}
+
+	private void closeWindow(long now) {
+		double seconds = (now - windowStart) / 1e9;
+		double perFrame = 1e6 * Math.max(1, frames);
+		long allocated = allocatedBytes();
+		double[] window = new double[] {
+				frames,
+				frames / seconds,
+				sectionNanos[UPDATE] / perFrame,
+				(sectionNanos[MAP] - markerNanos) / perFrame,
+				markerNanos / perFrame,
+				sectionNanos[KEY] / perFrame,
+				sectionNanos[POPUP] / perFrame,
+				sectionNanos[HIT_TEST] / perFrame,
+				frameNanos / perFrame,
+				(double) drawn / Math.max(1, frames),
+				(double) culled / Math.max(1, frames),
+				(double) offscreen / Math.max(1, frames),
+				(allocated < 0) ? -1 : (allocated - allocatedAtStart) / seconds / (1 << 20),
+				gcCount() - gcCountAtStart,
+				gcMillis() - gcMillisAtStart
+		};
+		values = new double[COLUMNS.length];
+		System.arraycopy(window, 0, values, 0, window.length);
+		System.arraycopy(refresh, 0, values, window.length, refresh.length);
+		if (logFile != null) {
+			writeLog();
+		}
+	}
+
+	private void writeLog() {
+		boolean json = logFile.endsWith(".json");
+		try {
+			if (log == null) {
+				log = new PrintWriter(new FileWriter(logFile));
+				if (!json) {
+					log.println("time_ms," + String.join(",", COLUMNS));
+				}
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Could not write frame metrics: " + e.getMessage());
+			logFile = null;
+			return;
+		}
+		StringBuilder line = new StringBuilder();
+		line.append(json ? "{\"time_ms\":" : "").append(System.currentTimeMillis());
+		for (int i = 0; i < COLUMNS.length; i++) {
+			line.append(',');
+			if (json) {
+				line.append('"').append(COLUMNS[i]).append("\":");
+			}
+			line.append(format(values[i]));
+		}
+		if (json) {
+			line.append('}');
+		}
+		log.println(line);
+		log.flush();
+	}
+
+	private static String format(double value) {
+		return (value == Math.rint(value)) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	// bytes allocated by the animation thread, or -1 if not supported
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+					Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/** The cities inside every quake's threat circle, as one table of edges
+ * from quake rows to city indices
+ *
+ * The edges are kept in compressed rows: the cities of row r are
+ * cities[offsets[r]] to cities[offsets[r+1]-1], in ascending order, so a
+ * quake's cities are found without a search and the whole table is two int
+ * arrays.  The table is built once per data load with the city index, and
+ * extend only queries the rows appended to the store since.  Removed rows
+ * keep their edges in the arrays but report no cities, until the store is
+ * compacted and compact drops them.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ImpactEdges {
+
+	private static final int[] NONE = new int[0];
+
+	private QuakeStore quakeStore;
+	private ProximityIndex cityIndex;
+
+	// number of rows with edges, the start of every row's edges and one
+	// past the last, and the city indices
+	private int rows;
+	private int[] offsets = new int[1];
+	private int[] cities = new int[0];
+
+	/**
+	 * @param cityIndex - index over the city markers, whose positions are
+	 *        the city indices of the edges
+	 */
+	public ImpactEdges(QuakeStore quakeStore, ProximityIndex cityIndex) {
+		this.quakeStore = quakeStore;
+		this.cityIndex = cityIndex;
+		extend();
+	}
+
+	/** Adds the edges of the rows appended to the store since the table was
+	 * built or last extended
+	 */
+	public void extend() {
+		int size = quakeStore.size();
+		if (size == rows) {
+			return;
+		}
+		offsets = Arrays.copyOf(offsets, size + 1);
+		int count = offsets[rows];
+		for (int row = rows; row < size; row++) {
+			int[] hits = cityIndex.within(quakeStore.getLocation(row), quakeStore.getThreatRadius(row));
+			if (count + hits.length > cities.length) {
+				cities = Arrays.copyOf(cities, Math.max(2*cities.length, count + hits.length));
+			}
+			System.arraycopy(hits, 0, cities, count, hits.length);
+			count += hits.length;
+			offsets[row + 1] = count;
+		}
+		rows = size;
+	}
+
+	/** Drops the edges of removed rows after QuakeStore.compact, moving the
+	 * edges of the other rows to their new rows
+	 *
+	 * @param newRows - the new row of every old row, or -1, as returned by
+	 *        QuakeStore.compact
+	 */
+	public void compact(int[] newRows) {
+		// live rows only move down, so the edges can be moved in place
+		int count = 0;
+		int live = 0;
+		for (int row = 0; row < rows; row++) {
+			if (newRows[row] < 0) {
+				continue;
+			}
+			int start = offsets[row];
+			int end = offsets[row + 1];
+			System.arraycopy(cities, start, cities, count, end - start);
+			offsets[live] = count;
+			count += end - start;
+			live++;
+		}
+		offsets[live] = count;
+		rows = live;
+		offsets = Arrays.copyOf(offsets, rows + 1);
+		cities = Arrays.copyOf(cities, count);
+		// rows appended to the store since the last extend
+		extend();
+	}
+
+	/** Number of rows of the store the table covers */
+	public int rows() {
+		return rows;
+	}
+
+	/** Number of edges, including those of removed rows */
+	public int size() {
+		return offsets[rows];
+	}
+
+	/** Number of cities in the threat circle of the row */
+	public int count(int row) {
+		if (row >= rows || quakeStore.isRemoved(row)) {
+			return 0;
+		}
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/** The index of the i-th city of the row, 0 <= i < count(row) */
+	public int getCity(int row, int i) {
+		return cities[offsets[row] + i];
+	}
+
+	/** The indices of the cities in the threat circle of the row, in
+	 * ascending order
+	 */
+	public int[] getCities(int row) {
+		int count = count(row);
+		return (count == 0) ? NONE : Arrays.copyOfRange(cities, offsets[row], offsets[row] + count);
+	}
+}
@@ -0,0 +1,75 @@
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.mapdisplay.AbstractMapDisplay;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MarkerManager;
+import processing.core.PGraphics;
+
+/** Draws the threat lines from a clicked quake to the cities in its threat
+ * circle
+ *
+ * The layer is added to the map as a marker manager without markers, so the
+ * map draws it in its own pass, between the quakes and the cities, and the
+ * lines are drawn in the map's coordinates for any position and size of the
+ * map.  The cities of the quake come from the ImpactEdges table, and all
+ * lines are drawn with one stroke.  Lines that cannot cross the viewport
+ * are skipped without projecting the city.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ImpactLineLayer extends MarkerManager<Marker> {
+
+	private ImpactEdges edges;
+	private List<Marker> cities;
+
+	// the quake whose lines are drawn, or null
+	private EarthquakeMarker quake;
+
+	/**
+	 * @param cities - the city markers the edges' city indices refer to
+	 */
+	public ImpactLineLayer(ImpactEdges edges, List<Marker> cities) {
+		this.edges = edges;
+		this.cities = cities;
+	}
+
+	/** Draws the lines of the quake, or no lines if it is null */
+	public void show(EarthquakeMarker quake) {
+		this.quake = quake;
+	}
+
+	/** The quake whose lines are drawn, or null */
+	public EarthquakeMarker getQuake() {
+		return quake;
+	}
+
+	@Override
+	public void draw() {
+		if (!bEnableDrawing || map == null || quake == null) {
+			return;
+		}
+		int row = quake.getRow();
+		int count = edges.count(row);
+		if (count == 0) {
+			return;
+		}
+		AbstractMapDisplay display = map.mapDisplay;
+		PGraphics pg = display.getOuterPG();
+		Viewport viewport = CommonMarker.getViewport();
+		Location quakeLoc = quake.getLocation();
+		float[] quakePos = display.getObjectFromLocation(quakeLoc);
+		pg.pushStyle();
+		pg.stroke(0, 255, 0);
+		for (int i = 0; i < count; i++) {
+			Location cityLoc = cities.get(edges.getCity(row, i)).getLocation();
+			if (viewport != null && !viewport.mayIntersect(quakeLoc, cityLoc)) {
+				continue;
+			}
+			float[] cityPos = display.getObjectFromLocation(cityLoc);
+			pg.line(quakePos[0], quakePos[1], cityPos[0], cityPos[1]);
+		}
+		pg.popStyle();
+	}
+}
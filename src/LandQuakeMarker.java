@@ -1,6 +1,5 @@
 
 
-import de.fhpotsdam.unfolding.data.PointFeature;
 import processing.core.PGraphics;
 
 /** Implements a visual marker for land earthquakes on an earthquake map
@@ -12,10 +11,10 @@ import processing.core.PGraphics;
 public class LandQuakeMarker extends EarthquakeMarker {
 	
 	
-	public LandQuakeMarker(PointFeature quake) {
+	public LandQuakeMarker(QuakeStore store, int row) {
 		
 		// calling EarthquakeMarker constructor
-		super(quake);
+		super(store, row);
 		
 		// setting field in earthquake marker
 		isOnLand = true;
@@ -30,8 +29,8 @@ public class LandQuakeMarker extends EarthquakeMarker {
 		// class to indicate the depth of the earthquake.
 		// Simply draw a centered circle.
 						
-		// Notice the radius variable in the EarthquakeMarker class
-		// and how it is set in the EarthquakeMarker constructor
+		// Notice the getRadius method in the EarthquakeMarker class
+		// and how the radius is set from the magnitude
 						
 		pg.ellipse(x, y, getRadius(), getRadius());
 		
@@ -40,7 +39,7 @@ public class LandQuakeMarker extends EarthquakeMarker {
 
 	// Get the country the earthquake is in
 	public String getCountry() {
-		return (String) getProperty("country");
+		return store.getCountry(row);
 	}
 
 		
@@ -0,0 +1,126 @@
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+import processing.core.PGraphics;
+import processing.core.PStyle;
+
+/** Draws markers in one pass without saving and restoring the style around
+ * every marker
+ *
+ * CommonMarker.drawMarker pushes the style, sets it with applyStyle, draws
+ * the shape and any decoration, and pops the style again, which copies the
+ * whole style twice per marker.  A batch pushes the style once and calls the
+ * same methods, but only calls applyStyle when a marker's style key differs
+ * from the previous marker's, e.g. when the depth color of a quake changes.
+ * A decoration, such as the X over a recent quake, sets its own stroke; the
+ * style the batch started with is only put back before the next shape after
+ * one.
+ *
+ * Markers are drawn in the order they are given, by their own methods, so
+ * the pixels are exactly those the markers draw one by one.  Markers without
+ * a style key, and selected markers, whose titles draw more than one shape,
+ * are drawn by their own draw method in between.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class MarkerBatch {
+
+	private static final int NONE = CommonMarker.NO_STYLE;
+
+	private PGraphics pg;
+	// the style the batch started with, and whether a decoration changed
+	// it beyond what applyStyle sets since
+	private PStyle startStyle;
+	private boolean decorated;
+	// the style key in effect
+	private int style;
+	private int drawn;
+	// when the batch began, and the time spent in the markers' own draw
+	private long start;
+	private long otherNanos;
+
+	/** Saves the style of pg; markers are then drawn with draw */
+	public void begin(PGraphics pg) {
+		this.pg = pg;
+		pg.pushStyle();
+		startStyle = pg.getStyle();
+		decorated = false;
+		style = NONE;
+		drawn = 0;
+		otherNanos = 0;
+		start = (CommonMarker.getMetrics() != null) ? System.nanoTime() : 0;
+	}
+
+	/** Draws the marker at the screen position, as marker.draw(pg, x, y)
+	 * would.  Hidden markers are skipped.
+	 */
+	public void draw(CommonMarker marker, float x, float y) {
+		if (marker.isHidden()) {
+			marker.draw(pg, x, y);
+			return;
+		}
+		int key = marker.getStyleKey();
+		if (marker.isSelected() || key == CommonMarker.NO_STYLE) {
+			// the marker draws with the style the batch started with, and
+			// reports its own time
+			long before = suspend();
+			marker.draw(pg, x, y);
+			resume(before);
+			return;
+		}
+
+		if (decorated) {
+			pg.style(startStyle);
+			decorated = false;
+			style = NONE;
+		}
+		if (key != style) {
+			marker.applyStyle(pg);
+			style = key;
+		}
+		marker.drawShape(pg, x, y);
+		if (marker.hasDecoration()) {
+			marker.drawDecoration(pg, x, y);
+			decorated = true;
+		}
+		drawn++;
+	}
+
+	/** Draws a marker that is not a CommonMarker by its own draw method */
+	public void draw(Marker marker, UnfoldingMap map) {
+		long before = suspend();
+		marker.draw(map);
+		resume(before);
+	}
+
+	/** Puts back the style pg had when the batch began, and returns the
+	 * number of markers the batch drew itself
+	 */
+	public int end() {
+		pg.popStyle();
+		FrameMetrics metrics = CommonMarker.getMetrics();
+		if (metrics != null && start != 0) {
+			metrics.markersDrawn(drawn, System.nanoTime() - start - otherNanos);
+		}
+		pg = null;
+		startStyle = null;
+		return drawn;
+	}
+
+	// puts back the style the batch started with before a marker draws
+	// itself, and returns when it started if the batch is timed
+	private long suspend() {
+		pg.popStyle();
+		return (start != 0) ? System.nanoTime() : 0;
+	}
+
+	// saves the style again after a marker drew itself
+	private void resume(long before) {
+		if (start != 0) {
+			otherNanos += System.nanoTime() - before;
+		}
+		pg.pushStyle();
+		style = NONE;
+		decorated = false;
+	}
+}
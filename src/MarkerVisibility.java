@@ -0,0 +1,154 @@
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Which markers of a list are shown, as bitsets over the markers' indices
+ *
+ * Filters are bitsets of the indices they let through, e.g. the quakes of
+ * one magnitude or country built by QuakeFilters, and a marker passes the
+ * filters if every filter lets it through.  The focus is a further bitset
+ * set while a marker is clicked, of the markers shown around it.  A marker
+ * is visible if it passes the filters and, while there is a focus, is in
+ * the focus.
+ *
+ * The visible set is recomputed with bitwise ANDs when a filter or the focus
+ * changes, so changing the view costs a pass over N/64 words instead of one
+ * setHidden call per marker.  Markers given this set with
+ * CommonMarker.setVisibility report themselves hidden when they are not
+ * visible, and are skipped when drawn.
+ *
+ * Indices at or above the size the set was created or last grown with are
+ * not visible.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class MarkerVisibility {
+
+	private int size;
+	private Map<String, BitSet> filters = new LinkedHashMap<String, BitSet>();
+	private BitSet focus;
+
+	// the AND of the filters, and that AND the focus
+	private BitSet filtered = new BitSet();
+	private BitSet visible = new BitSet();
+
+	/**
+	 * @param size - number of indices, all visible at first
+	 */
+	public MarkerVisibility(int size) {
+		this.size = size;
+		update();
+	}
+
+	/** Makes room for indices appended up to the new size.  The new
+	 * indices are only let through by filters set after they were added, and
+	 * are outside the focus.
+	 */
+	public void grow(int size) {
+		if (size > this.size) {
+			this.size = size;
+			update();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Moves every filter and the focus to new indices, e.g. the rows
+	 * QuakeStore.compact moved the quakes to.  Indices mapped to -1 are
+	 * dropped.
+	 *
+	 * @param newIndices - the new index of every old index, or -1
+	 * @param size - the number of indices afterwards
+	 */
+	public void remap(int[] newIndices, int size) {
+		for (Map.Entry<String, BitSet> filter : filters.entrySet()) {
+			filter.setValue(remap(filter.getValue(), newIndices));
+		}
+		if (focus != null) {
+			focus = remap(focus, newIndices);
+		}
+		this.size = size;
+		update();
+	}
+
+	/** Lets only the indices in the bitset through, replacing the filter of
+	 * the same name
+	 */
+	public void setFilter(String name, BitSet indices) {
+		filters.put(name, indices);
+		update();
+	}
+
+	/** Removes the filter of the given name, if there is one */
+	public void removeFilter(String name) {
+		if (filters.remove(name) != null) {
+			update();
+		}
+	}
+
+	/** Shows only the markers in the bitset that pass the filters, until the
+	 * focus is cleared
+	 */
+	public void setFocus(BitSet indices) {
+		focus = indices;
+		update();
+	}
+
+	/** Shows every marker that passes the filters */
+	public void clearFocus() {
+		if (focus != null) {
+			focus = null;
+			update();
+		}
+	}
+
+	public boolean hasFocus() {
+		return focus != null;
+	}
+
+	/** Returns true if the marker at the index passes the filters and is in
+	 * the focus, if there is one
+	 */
+	public boolean isVisible(int index) {
+		return visible.get(index);
+	}
+
+	/** Returns true if the marker at the index passes the filters, whatever
+	 * the focus
+	 */
+	public boolean passesFilters(int index) {
+		return filtered.get(index);
+	}
+
+	/** Number of visible markers */
+	public int visibleCount() {
+		return visible.cardinality();
+	}
+
+	private static BitSet remap(BitSet indices, int[] newIndices) {
+		BitSet remapped = new BitSet();
+		for (int i = indices.nextSetBit(0); i >= 0 && i < newIndices.length; i = indices.nextSetBit(i + 1)) {
+			if (newIndices[i] >= 0) {
+				remapped.set(newIndices[i]);
+			}
+		}
+		return remapped;
+	}
+
+	// recomputes both sets with a word-wise AND per filter
+	private void update() {
+		filtered.clear();
+		filtered.set(0, size);
+		for (BitSet filter : filters.values()) {
+			filtered.and(filter);
+		}
+		visible.clear();
+		visible.or(filtered);
+		if (focus != null) {
+			visible.and(focus);
+		}
+	}
+}
@@ -1,12 +1,5 @@
 
 
-import java.util.List;
-
-import de.fhpotsdam.unfolding.UnfoldingMap;
-import de.fhpotsdam.unfolding.data.PointFeature;
-import de.fhpotsdam.unfolding.geo.Location;
-import de.fhpotsdam.unfolding.marker.Marker;
-import de.fhpotsdam.unfolding.utils.ScreenPosition;
 import processing.core.PGraphics;
 
 /** Implements a visual marker for ocean earthquakes on an earthquake map
@@ -17,20 +10,11 @@ import processing.core.PGraphics;
  */
 public class OceanQuakeMarker extends EarthquakeMarker {
 	
-	public static boolean isLoaded;
-	
-	public static UnfoldingMap map;
-	
-	// Markers for each city
-	public static List<Marker> cityMarkers;
-	
-	public OceanQuakeMarker(PointFeature quake) {
-		super(quake);
+	public OceanQuakeMarker(QuakeStore store, int row) {
+		super(store, row);
 		
 		// setting field in earthquake marker
 		isOnLand = false;
-		
-		isLoaded = false;
 	}
 	
 
@@ -42,42 +26,14 @@ public class OceanQuakeMarker extends EarthquakeMarker {
 		// class to indicate the depth of the earthquake.
 		// Simply draw a centered square.
 						
-		// Notice the radius variable in the EarthquakeMarker class
-		// and how it is set in the EarthquakeMarker constructor
+		// Notice the getRadius method in the EarthquakeMarker class
+		// and how the radius is set from the magnitude
 						
 		pg.rect((x-(getRadius()/(2.0f))), (y-(getRadius()/(2.0f))),
 				getRadius(), getRadius());
 		
-		pg.pushStyle();
-		if (isLoaded) {
-			if (getClicked()) {
-				Location quakeLoc = getLocation();
-				ScreenPosition quakePos = map.getScreenPosition(quakeLoc);
-				Location cityLoc;
-				ScreenPosition cityPos;
-				for (Marker m : cityMarkers) {
-					if (m.getDistanceTo(getLocation()) <=
-							threatCircle()) {
-						cityLoc = m.getLocation();
-						cityPos = map.getScreenPosition(cityLoc);
-						pg.stroke(0, 255, 0);
-						pg.line((quakePos.x-200),(quakePos.y-50),(cityPos.x-200),(cityPos.y-50));
-					}
-				}
-			}
-			else {
-				pg.noStroke();
-			}
-		}
-		pg.popStyle();
 	}
 	
-	public static void loadCityMarkers(List<Marker> cityMarkerList,
-			UnfoldingMap cityMap) {
-		isLoaded = true;
-		cityMarkers = cityMarkerList;
-		map = cityMap;
-	}
 	
 
 	
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.GeoUtils;
+
+/** Spatial index over a fixed list of locations on the sphere
+ *
+ * Locations are bucketed in a uniform lat/lon grid.  A radius query only
+ * visits the cells covering the query circle's bounding box, which takes the
+ * antimeridian and the poles into account, and then applies exactly the
+ * distance test the brute-force scans use (GeoUtils.getDistance, as in
+ * Marker.getDistanceTo).  Results are therefore identical to filtering the
+ * whole list, and are returned as indices into the list, in list order.
+ *
+ * Each location may also carry a radius of its own, e.g. an earthquake's
+ * threat circle, to answer "which circles cover this location".  Locations
+ * are grouped into tiers of similar radius so that a few very large circles
+ * do not force every query to search the whole globe.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ProximityIndex {
+
+	/** Width and height of a grid cell, in degrees */
+	public static final double CELL_DEGREES = 2.5;
+
+	private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES);
+	private static final int COLS = (int) Math.ceil(360 / CELL_DEGREES);
+
+	// Extra degrees added around every query box, so float rounding in the
+	// stored coordinates and the distance formula can never exclude a match
+	private static final double MARGIN_DEGREES = 0.05;
+
+	// Upper radius of the smallest tier; each further tier doubles it
+	private static final double FIRST_TIER_KM = 50;
+
+	private static final int[] NONE = new int[0];
+
+	private float[] lats;
+	private float[] lons;
+	private double[] radii;
+
+	// One grid per tier of radii
+	private List<Grid> tiers = new ArrayList<Grid>();
+
+	/** Index of locations without radii, for within queries */
+	public ProximityIndex(List<Location> locations) {
+		this(locations, null);
+	}
+
+	/**
+	 * @param locations - the locations to index
+	 * @param radii - radius in km around each location, or null
+	 */
+	public ProximityIndex(List<Location> locations, double[] radii) {
+		int n = locations.size();
+		lats = new float[n];
+		lons = new float[n];
+		this.radii = (radii != null) ? radii : new double[n];
+		int[] tierOf = new int[n];
+		int numTiers = 1;
+		for (int i = 0; i < n; i++) {
+			lats[i] = locations.get(i).getLat();
+			lons[i] = locations.get(i).getLon();
+			tierOf[i] = tierOf(this.radii[i]);
+			numTiers = Math.max(numTiers, tierOf[i] + 1);
+		}
+		for (int t = 0; t < numTiers; t++) {
+			tiers.add(new Grid(tierOf, t));
+		}
+	}
+
+	/** Index over the locations of the markers */
+	public static ProximityIndex ofMarkers(List<? extends Marker> markers) {
+		List<Location> locations = new ArrayList<Location>();
+		for (Marker m : markers) {
+			locations.add(m.getLocation());
+		}
+		return new ProximityIndex(locations);
+	}
+
+	/** Index over earthquake markers and their threat circles */
+	public static ProximityIndex ofThreatCircles(List<? extends Marker> quakes) {
+		List<Location> locations = new ArrayList<Location>();
+		double[] radii = new double[quakes.size()];
+		for (int i = 0; i < quakes.size(); i++) {
+			EarthquakeMarker quake = (EarthquakeMarker) quakes.get(i);
+			locations.add(quake.getLocation());
+			radii[i] = quake.threatCircle();
+		}
+		return new ProximityIndex(locations, radii);
+	}
+
+	public int size() {
+		return lats.length;
+	}
+
+	/** Returns the indices of all locations whose distance to center is at
+	 * most radiusKm, in ascending order.
+	 */
+	public int[] within(Location center, double radiusKm) {
+		Hits hits = new Hits();
+		for (Grid grid : tiers) {
+			grid.collect(center, radiusKm, false, hits);
+		}
+		return hits.sorted();
+	}
+
+	/** Returns the indices of all locations whose own radius reaches the given
+	 * location, in ascending order.
+	 */
+	public int[] covering(Location location) {
+		Hits hits = new Hits();
+		for (Grid grid : tiers) {
+			grid.collect(location, grid.maxRadius, true, hits);
+		}
+		return hits.sorted();
+	}
+
+	// the same test as Marker.getDistanceTo(center) <= radius
+	private boolean isWithin(int i, Location center, double radiusKm) {
+		return GeoUtils.getDistance(lats[i], lons[i], center.getLat(), center.getLon()) <= radiusKm;
+	}
+
+	private static int tierOf(double radius) {
+		int tier = 0;
+		double limit = FIRST_TIER_KM;
+		while (radius > limit) {
+			tier++;
+			limit *= 2;
+		}
+		return tier;
+	}
+
+	/** Grid of the locations in one tier, in compressed row storage */
+	private class Grid {
+		double maxRadius;
+		int[] cellStart = new int[ROWS*COLS + 1];
+		int[] items;
+
+		Grid(int[] tierOf, int tier) {
+			int count = 0;
+			for (int i = 0; i < tierOf.length; i++) {
+				if (tierOf[i] == tier) {
+					cellStart[cellOf(lats[i], lons[i]) + 1]++;
+					maxRadius = Math.max(maxRadius, radii[i]);
+					count++;
+				}
+			}
+			for (int c = 0; c < ROWS*COLS; c++) {
+				cellStart[c + 1] += cellStart[c];
+			}
+			items = new int[count];
+			int[] fill = Arrays.copyOf(cellStart, ROWS*COLS);
+			for (int i = 0; i < tierOf.length; i++) {
+				if (tierOf[i] == tier) {
+					items[fill[cellOf(lats[i], lons[i])]++] = i;
+				}
+			}
+		}
+
+		/*
+		 * Adds the locations within searchRadius of center that pass the
+		 * distance test: against searchRadius itself, or against each
+		 * location's own radius when ownRadius is true.
+		 */
+		void collect(Location center, double searchRadius, boolean ownRadius, Hits hits) {
+			if (items.length == 0) {
+				return;
+			}
+			double angle = searchRadius / GeoUtils.EARTH_RADIUS_KM;
+			double lat = center.getLat();
+			double dLat = Math.toDegrees(angle) + MARGIN_DEGREES;
+			int rowMin = rowOf(lat - dLat);
+			int rowMax = rowOf(lat + dLat);
+
+			// longitude span of the circle, unless it reaches a pole or
+			// covers more than a hemisphere
+			boolean allLons = angle >= Math.PI / 2 || Math.abs(lat) + dLat >= 90;
+			double dLon = 180;
+			if (!allLons) {
+				double s = Math.sin(angle) / Math.cos(Math.toRadians(lat));
+				if (s >= 1) {
+					allLons = true;
+				}
+				else {
+					dLon = Math.toDegrees(Math.asin(s)) + MARGIN_DEGREES;
+					allLons = dLon >= 180;
+				}
+			}
+
+			if (allLons) {
+				scan(rowMin, rowMax, 0, COLS - 1, center, searchRadius, ownRadius, hits);
+			}
+			else {
+				double lon = normalizeLon(center.getLon());
+				int colMin = (int) Math.floor((lon - dLon + 180) / CELL_DEGREES);
+				int colMax = (int) Math.floor((lon + dLon + 180) / CELL_DEGREES);
+				if (colMax - colMin + 1 >= COLS) {
+					colMin = 0;
+					colMax = COLS - 1;
+				}
+				// split the range where it crosses the antimeridian
+				if (colMin < 0) {
+					scan(rowMin, rowMax, colMin + COLS, COLS - 1, center, searchRadius, ownRadius, hits);
+					colMin = 0;
+				}
+				if (colMax >= COLS) {
+					scan(rowMin, rowMax, 0, colMax - COLS, center, searchRadius, ownRadius, hits);
+					colMax = COLS - 1;
+				}
+				scan(rowMin, rowMax, colMin, colMax, center, searchRadius, ownRadius, hits);
+			}
+		}
+
+		private void scan(int rowMin, int rowMax, int colMin, int colMax,
+				Location center, double radiusKm, boolean ownRadius, Hits hits) {
+			for (int row = rowMin; row <= rowMax; row++) {
+				for (int col = colMin; col <= colMax; col++) {
+					int cell = row*COLS + col;
+					for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+						int i = items[k];
+						if (isWithin(i, center, ownRadius ? radii[i] : radiusKm)) {
+							hits.add(i);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Growable list of matching indices */
+	private static class Hits {
+		int[] values = NONE;
+		int size;
+
+		void add(int i) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, Math.max(8, 2*size));
+			}
+			values[size++] = i;
+		}
+
+		int[] sorted() {
+			int[] result = Arrays.copyOf(values, size);
+			Arrays.sort(result);
+			return result;
+		}
+	}
+
+	private static int cellOf(float lat, float lon) {
+		int col = (int) Math.floor((normalizeLon(lon) + 180) / CELL_DEGREES);
+		return rowOf(lat)*COLS + Math.min(COLS - 1, col);
+	}
+
+	private static int rowOf(double lat) {
+		int row = (int) Math.floor((lat + 90) / CELL_DEGREES);
+		return Math.max(0, Math.min(ROWS - 1, row));
+	}
+
+	// longitude in [-180, 180)
+	private static double normalizeLon(double lon) {
+		return ((lon + 180) % 360 + 360) % 360 - 180;
+	}
+}
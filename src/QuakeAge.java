@@ -0,0 +1,49 @@
+/** The "Age" categories of the USGS feed, ordered from most to least recent
+ * 
+ * @author Hamadi McIntosh
+ *
+ */
+public enum QuakeAge {
+	
+	PAST_HOUR("Past Hour", 1),
+	PAST_DAY("Past Day", 24),
+	PAST_WEEK("Past Week", 24*7),
+	PAST_MONTH("Past Month", 24*30),
+	// anything the feed does not label with one of the terms above
+	OLDER(null, 24*7*52);
+	
+	private final String term;
+	private final int hours;
+	
+	private QuakeAge(String term, int hours) {
+		this.term = term;
+		this.hours = hours;
+	}
+	
+	/** The feed's term for the category, null for OLDER */
+	public String getTerm() {
+		return term;
+	}
+	
+	/** Upper bound, in hours, of the age of a quake in this category */
+	public int getHours() {
+		return hours;
+	}
+	
+	/** Returns true for the past hour and day categories, the fallback of
+	 * EarthquakeMarker.isPastDay for quakes without a time
+	 */
+	public boolean isPastDay() {
+		return this == PAST_HOUR || this == PAST_DAY;
+	}
+	
+	/** Returns the category for the feed's term, e.g. "Past Hour" */
+	public static QuakeAge fromTerm(String term) {
+		for (QuakeAge age : values()) {
+			if (age.term != null && age.term.equals(term)) {
+				return age;
+			}
+		}
+		return OLDER;
+	}
+}
@@ -0,0 +1,142 @@
+/** Quake counts, magnitude sums and maxima and depth histograms per country
+ *
+ * Every country id of the store's CountryDictionary has one slot in each of
+ * a few primitive arrays, and the quakes outside every country have one more
+ * slot after the last country.  aggregate fills all of them in a single pass
+ * over the store's rows without allocating, so it can be rerun after every
+ * feed update or over a whole archive.  The accessors take a country id or
+ * QuakeStore.OCEAN, and the land and depth class totals are kept alongside.
+ *
+ * Depth classes are the ones the markers are colored by: shallow, then
+ * intermediate from EarthquakeMarker.THRESHOLD_INTERMEDIATE, then deep from
+ * EarthquakeMarker.THRESHOLD_DEEP.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeAggregates {
+
+	/** Depth classes */
+	public static final int SHALLOW = 0;
+	public static final int INTERMEDIATE = 1;
+	public static final int DEEP = 2;
+	public static final int DEPTH_CLASSES = 3;
+
+	private QuakeStore quakeStore;
+	private int ocean;
+
+	// one slot per country id, then the ocean slot
+	private int[] counts;
+	private double[] magnitudeSums;
+	private float[] maxMagnitudes;
+	// DEPTH_CLASSES slots per country id, then the ocean's
+	private int[] depthCounts;
+
+	private int total;
+	private int[] depthTotals = new int[DEPTH_CLASSES];
+
+	public QuakeAggregates(QuakeStore quakeStore) {
+		this.quakeStore = quakeStore;
+		ocean = quakeStore.getCountryCount();
+		counts = new int[ocean + 1];
+		magnitudeSums = new double[ocean + 1];
+		maxMagnitudes = new float[ocean + 1];
+		depthCounts = new int[(ocean + 1) * DEPTH_CLASSES];
+		aggregate();
+	}
+
+	/** Recomputes everything from the live rows, after the store has changed */
+	public void aggregate() {
+		for (int slot = 0; slot <= ocean; slot++) {
+			counts[slot] = 0;
+			magnitudeSums[slot] = 0;
+			maxMagnitudes[slot] = Float.NEGATIVE_INFINITY;
+		}
+		for (int i = 0; i < depthCounts.length; i++) {
+			depthCounts[i] = 0;
+		}
+		for (int c = 0; c < DEPTH_CLASSES; c++) {
+			depthTotals[c] = 0;
+		}
+		total = 0;
+
+		for (int row = 0; row < quakeStore.size(); row++) {
+			if (quakeStore.isRemoved(row)) {
+				continue;
+			}
+			int slot = quakeStore.isOnLand(row) ? quakeStore.getCountryId(row) : ocean;
+			float magnitude = quakeStore.getMagnitude(row);
+			int depthClass = depthClass(quakeStore.getDepth(row));
+			counts[slot]++;
+			magnitudeSums[slot] += magnitude;
+			if (magnitude > maxMagnitudes[slot]) {
+				maxMagnitudes[slot] = magnitude;
+			}
+			depthCounts[slot*DEPTH_CLASSES + depthClass]++;
+			depthTotals[depthClass]++;
+			total++;
+		}
+	}
+
+	/** The depth class of a quake of this depth */
+	public static int depthClass(float depth) {
+		if (depth < EarthquakeMarker.THRESHOLD_INTERMEDIATE) {
+			return SHALLOW;
+		}
+		return (depth < EarthquakeMarker.THRESHOLD_DEEP) ? INTERMEDIATE : DEEP;
+	}
+
+	/** Number of live quakes */
+	public int getTotalCount() {
+		return total;
+	}
+
+	/** Number of live quakes inside a country */
+	public int getLandCount() {
+		return total - counts[ocean];
+	}
+
+	/** Number of live quakes outside every country */
+	public int getOceanCount() {
+		return counts[ocean];
+	}
+
+	/** Number of live quakes of the depth class */
+	public int getDepthCount(int depthClass) {
+		return depthTotals[depthClass];
+	}
+
+	/** Number of live quakes in the country, or outside every country for
+	 * QuakeStore.OCEAN
+	 */
+	public int getCount(int countryId) {
+		return counts[slot(countryId)];
+	}
+
+	/** Number of live quakes of the depth class in the country, or outside
+	 * every country for QuakeStore.OCEAN
+	 */
+	public int getDepthCount(int countryId, int depthClass) {
+		return depthCounts[slot(countryId)*DEPTH_CLASSES + depthClass];
+	}
+
+	public double getMagnitudeSum(int countryId) {
+		return magnitudeSums[slot(countryId)];
+	}
+
+	/** Mean magnitude of the country's quakes, or 0 if it has none */
+	public double getMeanMagnitude(int countryId) {
+		int slot = slot(countryId);
+		return (counts[slot] == 0) ? 0 : magnitudeSums[slot] / counts[slot];
+	}
+
+	/** Largest magnitude of the country's quakes, or 0 if it has none */
+	public float getMaxMagnitude(int countryId) {
+		int slot = slot(countryId);
+		return (counts[slot] == 0) ? 0 : maxMagnitudes[slot];
+	}
+
+	private int slot(int countryId) {
+		return (countryId == QuakeStore.OCEAN) ? ocean : countryId;
+	}
+}
@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MarkerManager;
+
+/** Level-of-detail layer for the earthquake markers
+ *
+ * For every zoom level up to MAX_CLUSTER_ZOOM the quakes are grouped in a
+ * grid of CELL_PIXELS square cells in world pixel coordinates (Web Mercator,
+ * 256 pixels wide at level 0).  A cell holding several quakes is drawn as one
+ * ClusterMarker with their count and largest magnitude; a cell holding a
+ * single quake is drawn as the quake marker itself.  The levels are built
+ * bottom-up, since a cell at one level is the union of four cells at the
+ * level below, and are rebuilt only when the quake list changes.
+ *
+ * Beyond MAX_CLUSTER_ZOOM, or while clustering is switched off, the quakes
+ * are drawn individually.  Either way only one of the two marker managers
+ * is drawn, so the work per frame follows the number of visible clusters.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeClusterLayer {
+
+	/** Deepest zoom level at which quakes are still clustered */
+	public static final int MAX_CLUSTER_ZOOM = 6;
+
+	/** Width and height of a cluster cell, in pixels */
+	public static final int CELL_PIXELS = 40;
+
+	private static final int TILE_SIZE = 256;
+	private static final double MAX_MERCATOR_LAT = 85.0511;
+
+	private UnfoldingMap map;
+	private List<Marker> quakes;
+	private MarkerManager<Marker> quakeManager;
+	private MarkerManager<Marker> clusterManager;
+
+	// the markers to draw at each zoom level up to MAX_CLUSTER_ZOOM
+	private List<List<Marker>> levels = new ArrayList<List<Marker>>();
+
+	// the list drawn at the moment, null before the first update
+	private List<Marker> visible;
+
+	// the filters quakes must pass to be counted in a cluster, or null
+	private MarkerVisibility filters;
+
+	/** Adds the layer's marker managers to the map.  The quake list is drawn
+	 * directly, so later changes to it show up without re-adding markers;
+	 * call rebuild after such changes.
+	 */
+	public QuakeClusterLayer(UnfoldingMap map, List<Marker> quakes) {
+		this.map = map;
+		this.quakes = quakes;
+		quakeManager = new BatchedMarkerManager();
+		quakeManager.setMarkers(quakes);
+		clusterManager = new BatchedMarkerManager();
+		map.addMarkerManager(quakeManager);
+		map.addMarkerManager(clusterManager);
+		rebuild();
+	}
+
+	/** Recomputes the clusters of every zoom level from the quake list */
+	public void rebuild() {
+		levels = buildLevels(quakes, filters);
+		visible = null;
+	}
+
+	/** Only counts the quakes that pass the filters of the visibility set,
+	 * indexed by row, in the clusters; call rebuild after the filters change
+	 */
+	public void setFilters(MarkerVisibility visibility) {
+		filters = visibility;
+		rebuild();
+	}
+
+	/** The markers to draw at zoom levels 0 to MAX_CLUSTER_ZOOM */
+	static List<List<Marker>> buildLevels(List<Marker> quakes) {
+		return buildLevels(quakes, null);
+	}
+
+	/** The markers to draw at zoom levels 0 to MAX_CLUSTER_ZOOM, counting
+	 * only the quakes that pass the filters, or all quakes if it is null
+	 */
+	static List<List<Marker>> buildLevels(List<Marker> quakes, MarkerVisibility filters) {
+		List<List<Marker>> levels = new ArrayList<List<Marker>>();
+		for (int z = 0; z <= MAX_CLUSTER_ZOOM; z++) {
+			levels.add(null);
+		}
+
+		// cells at the deepest level, in quake list order
+		Map<Long, Cell> cells = new LinkedHashMap<Long, Cell>();
+		double scale = CELL_PIXELS / (TILE_SIZE * Math.pow(2, MAX_CLUSTER_ZOOM));
+		for (Marker m : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			if (filters != null && !filters.passesFilters(quake.getRow())) {
+				continue;
+			}
+			Location loc = quake.getLocation();
+			int col = (int) Math.floor(worldX(loc.getLon()) / scale);
+			int row = (int) Math.floor(worldY(loc.getLat()) / scale);
+			Cell cell = cells.get(key(col, row));
+			if (cell == null) {
+				cell = new Cell(col, row);
+				cells.put(key(col, row), cell);
+			}
+			cell.add(quake);
+		}
+
+		for (int z = MAX_CLUSTER_ZOOM; z >= 0; z--) {
+			List<Marker> markers = new ArrayList<Marker>();
+			for (Cell cell : cells.values()) {
+				markers.add(cell.toMarker(z));
+			}
+			levels.set(z, markers);
+
+			// a cell's parent covers it and its three neighbours
+			Map<Long, Cell> parents = new LinkedHashMap<Long, Cell>();
+			for (Cell cell : cells.values()) {
+				int col = cell.col >> 1;
+				int row = cell.row >> 1;
+				Cell parent = parents.get(key(col, row));
+				if (parent == null) {
+					parent = new Cell(col, row);
+					parents.put(key(col, row), parent);
+				}
+				parent.add(cell);
+			}
+			cells = parents;
+		}
+		return levels;
+	}
+
+	/** Chooses the markers to draw for the map's current zoom level.
+	 * Returns true if they differ from the ones chosen last time.
+	 *
+	 * @param clustered - false to draw every quake individually
+	 */
+	public boolean update(boolean clustered) {
+		List<Marker> markers = quakes;
+		int zoom = map.getZoomLevel();
+		if (clustered && zoom <= MAX_CLUSTER_ZOOM) {
+			markers = levels.get(Math.max(0, zoom));
+		}
+		if (markers == visible) {
+			return false;
+		}
+		visible = markers;
+		if (markers == quakes) {
+			clusterManager.disableDrawing();
+			quakeManager.enableDrawing();
+		}
+		else {
+			clusterManager.setMarkers(markers);
+			clusterManager.enableDrawing();
+			quakeManager.disableDrawing();
+		}
+		return true;
+	}
+
+	/** The markers drawn at the moment: clusters and single quakes, or the
+	 * quake list itself
+	 */
+	public List<Marker> getVisibleMarkers() {
+		return (visible == null) ? quakes : Collections.unmodifiableList(visible);
+	}
+
+	/** Zooms in far enough to split the cluster up, centred on it */
+	public void expand(ClusterMarker cluster) {
+		map.zoomAndPanTo(cluster.getZoomLevel() + 2, cluster.getLocation());
+	}
+
+	// position in world pixels at level 0, divided by the tile size
+	private static double worldX(double lon) {
+		return (lon + 180) / 360;
+	}
+
+	private static double worldY(double lat) {
+		lat = Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat));
+		double sin = Math.sin(Math.toRadians(lat));
+		return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+	}
+
+	private static long key(int col, int row) {
+		return ((long) col << 32) | (row & 0xffffffffL);
+	}
+
+	/** The quakes in one grid cell */
+	private static class Cell {
+		final int col;
+		final int row;
+		int count;
+		float maxMagnitude;
+		double sumLat;
+		double sumLon;
+		EarthquakeMarker single;
+
+		Cell(int col, int row) {
+			this.col = col;
+			this.row = row;
+		}
+
+		void add(EarthquakeMarker quake) {
+			Location loc = quake.getLocation();
+			if (count == 0 || quake.getMagnitude() > maxMagnitude) {
+				maxMagnitude = quake.getMagnitude();
+			}
+			single = (count == 0) ? quake : null;
+			count++;
+			sumLat += loc.getLat();
+			sumLon += loc.getLon();
+		}
+
+		void add(Cell child) {
+			if (count == 0 || child.maxMagnitude > maxMagnitude) {
+				maxMagnitude = child.maxMagnitude;
+			}
+			single = (count == 0) ? child.single : null;
+			count += child.count;
+			sumLat += child.sumLat;
+			sumLon += child.sumLon;
+		}
+
+		// cells do not wrap around the antimeridian, so the mean longitude
+		// lies inside the cell
+		Marker toMarker(int zoom) {
+			if (single != null) {
+				return single;
+			}
+			Location center = new Location((float) (sumLat/count), (float) (sumLon/count));
+			return new ClusterMarker(center, count, maxMagnitude, zoom);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+import java.util.BitSet;
+
+/** Builds filters for a MarkerVisibility over the rows of a QuakeStore
+ *
+ * Each filter is the bitset of the live rows with a property, built in one
+ * pass over the store's columns.  Filters are combined with BitSet.and for
+ * "all of" and BitSet.or for "any of", e.g. the shallow or deep quakes of
+ * magnitude 5 or more.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeFilters {
+
+	private QuakeFilters() {
+	}
+
+	/** The quakes of at least the given magnitude */
+	public static BitSet magnitudeAtLeast(QuakeStore store, float magnitude) {
+		BitSet rows = new BitSet(store.size());
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row) && store.getMagnitude(row) >= magnitude) {
+				rows.set(row);
+			}
+		}
+		return rows;
+	}
+
+	/** The quakes in any of the depth classes of QuakeAggregates whose bit
+	 * is set in the mask, e.g. (1 << SHALLOW) | (1 << DEEP)
+	 */
+	public static BitSet depthClasses(QuakeStore store, int mask) {
+		BitSet rows = new BitSet(store.size());
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row) && (mask & (1 << QuakeAggregates.depthClass(store.getDepth(row)))) != 0) {
+				rows.set(row);
+			}
+		}
+		return rows;
+	}
+
+	/** The quakes in the country, or in the ocean for QuakeStore.OCEAN */
+	public static BitSet country(QuakeStore store, int countryId) {
+		BitSet rows = new BitSet(store.size());
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row) && store.getCountryId(row) == countryId) {
+				rows.set(row);
+			}
+		}
+		return rows;
+	}
+
+	/** The quakes from the time from, inclusive, to the time to, exclusive,
+	 * looked up in the time index instead of scanning the store
+	 */
+	public static BitSet timeBetween(TimeIndex timeIndex, long from, long to) {
+		BitSet rows = new BitSet();
+		int end = timeIndex.firstAtOrAfter(to);
+		for (int i = timeIndex.firstAtOrAfter(from); i < end; i++) {
+			rows.set(timeIndex.getRow(i));
+		}
+		return rows;
+	}
+}
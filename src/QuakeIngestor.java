@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import parsing.QuakeFeedReader;
+
+/** Classifies earthquakes as land or ocean quakes on a pool of worker
+ * threads and builds their markers
+ *
+ * Quakes are taken from the feed in batches.  Each batch is classified by a
+ * worker while the feed is still being read, and batches are then appended
+ * to the quake store and turned into markers on the calling thread in the
+ * order they were read.  The store and the markers are therefore exactly what
+ * the sequential loop produces, whatever the number of threads.  With one
+ * thread no pool is created and everything runs on the calling thread.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeIngestor {
+
+	/** Receives each quake once its marker has been built, in feed order */
+	public interface Listener {
+		/**
+		 * @param feature - the quake as read from the feed
+		 * @param updated - the entry's <updated> timestamp, if the feed was
+		 *        a QuakeFeedReader, otherwise null
+		 * @param marker - its marker
+		 */
+		void ingested(PointFeature feature, String updated, EarthquakeMarker marker);
+	}
+
+	/** Number of quakes classified by one task */
+	public static final int BATCH_SIZE = 64;
+
+	private CountryIndex countryIndex;
+	private int threads;
+	private ExecutorService pool;
+
+	/**
+	 * @param countryIndex - index used to classify the quakes
+	 * @param threads - number of worker threads, 1 to classify on the
+	 *        calling thread
+	 */
+	public QuakeIngestor(CountryIndex countryIndex, int threads) {
+		this.countryIndex = countryIndex;
+		this.threads = Math.max(1, threads);
+		if (this.threads > 1) {
+			pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "QuakeIngestor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Reads the whole feed, adds every quake to the store and returns their
+	 * markers in feed order
+	 *
+	 * @param listener - called for every quake, or null
+	 */
+	public List<EarthquakeMarker> ingest(Iterator<PointFeature> feed, QuakeStore store, Listener listener) {
+		List<EarthquakeMarker> markers = new ArrayList<EarthquakeMarker>();
+		LinkedList<Batch> inFlight = new LinkedList<Batch>();
+		Batch batch = new Batch();
+		while (feed.hasNext()) {
+			PointFeature feature = feed.next();
+			batch.features.add(feature);
+			batch.updated.add((feed instanceof QuakeFeedReader) ?
+					((QuakeFeedReader) feed).getUpdated() : null);
+			if (batch.features.size() == BATCH_SIZE) {
+				inFlight.add(submit(batch));
+				batch = new Batch();
+				// keep a few batches per worker queued, not the whole feed
+				while (inFlight.size() > 2*threads) {
+					finish(inFlight.removeFirst(), store, listener, markers);
+				}
+			}
+		}
+		if (!batch.features.isEmpty()) {
+			inFlight.add(submit(batch));
+		}
+		while (!inFlight.isEmpty()) {
+			finish(inFlight.removeFirst(), store, listener, markers);
+		}
+		return markers;
+	}
+
+	/** Returns the country id of each quake, or QuakeStore.OCEAN, computed on
+	 * the worker threads
+	 */
+	public int[] classify(List<PointFeature> features) {
+		List<Batch> batches = new ArrayList<Batch>();
+		for (int start = 0; start < features.size(); start += BATCH_SIZE) {
+			Batch batch = new Batch();
+			batch.features.addAll(features.subList(start, Math.min(features.size(), start + BATCH_SIZE)));
+			batches.add(submit(batch));
+		}
+		int[] countryIds = new int[features.size()];
+		int i = 0;
+		for (Batch batch : batches) {
+			for (int id : batch.countryIds()) {
+				countryIds[i++] = id;
+			}
+		}
+		return countryIds;
+	}
+
+	/** Stops the worker threads */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	private Batch submit(final Batch batch) {
+		if (pool != null) {
+			batch.result = pool.submit(new Callable<int[]>() {
+				public int[] call() {
+					return classifyBatch(batch.features);
+				}
+			});
+		}
+		return batch;
+	}
+
+	private void finish(Batch batch, QuakeStore store, Listener listener, List<EarthquakeMarker> markers) {
+		int[] countryIds = batch.countryIds();
+		for (int i = 0; i < countryIds.length; i++) {
+			PointFeature feature = batch.features.get(i);
+			EarthquakeMarker marker = EarthquakeMarker.create(store, feature, countryIds[i]);
+			markers.add(marker);
+			if (listener != null) {
+				listener.ingested(feature, batch.updated.get(i), marker);
+			}
+		}
+	}
+
+	private int[] classifyBatch(List<PointFeature> features) {
+		int[] countryIds = new int[features.size()];
+		for (int i = 0; i < countryIds.length; i++) {
+			countryIds[i] = countryIndex.findCountryId(features.get(i).getLocation());
+		}
+		return countryIds;
+	}
+
+	/** Quakes read from the feed and, once classified, their countries */
+	private class Batch {
+		List<PointFeature> features = new ArrayList<PointFeature>(BATCH_SIZE);
+		List<String> updated = new ArrayList<String>(BATCH_SIZE);
+		Future<int[]> result;
+
+		// waits for the worker, or classifies here without a pool
+		int[] countryIds() {
+			if (result == null) {
+				return classifyBatch(features);
+			}
+			try {
+				return result.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while classifying earthquakes", e);
+			}
+			catch (ExecutionException e) {
+				throw new RuntimeException("Could not classify earthquakes", e.getCause());
+			}
+		}
+	}
+}
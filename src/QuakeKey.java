@@ -0,0 +1,32 @@
+/** Values of a quake that the quakes can be ranked by, larger first
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public enum QuakeKey {
+
+	MAGNITUDE {
+		public double of(QuakeStore store, int row) {
+			return store.getMagnitude(row);
+		}
+	},
+	DEPTH {
+		public double of(QuakeStore store, int row) {
+			return store.getDepth(row);
+		}
+	},
+	// later quakes rank first, quakes without a time last
+	RECENCY {
+		public double of(QuakeStore store, int row) {
+			return store.getTime(row);
+		}
+	},
+	THREAT_RADIUS {
+		public double of(QuakeStore store, int row) {
+			return store.getThreatRadius(row);
+		}
+	};
+
+	/** The key of a row of the store */
+	public abstract double of(QuakeStore store, int row);
+}
@@ -0,0 +1,210 @@
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/** Replays the quakes of the store through a sliding time window
+ *
+ * The playhead moves through the quakes' times at a chosen speed, and only
+ * the quakes that occurred during the window ending at the playhead are
+ * drawn.  The window is a TimeIndex.Window, so each frame only touches the
+ * quakes entering or leaving it: they are appended to or swapped out of the
+ * list of active markers, which the sketch draws with a marker manager.  The
+ * work per frame follows the number of quakes in the window and how many
+ * change, not the length of the archive.
+ *
+ * While playback is shown the quake list itself is not drawn; the sketch
+ * hit-tests the active markers instead.  Call rebuild after the store or the
+ * quake list changed.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakePlayback implements TimeIndex.WindowListener {
+
+	// longest frame that moves the playhead, so a stall does not skip part
+	// of the archive
+	private static final long MAX_FRAME_MILLIS = 250;
+
+	private QuakeStore quakeStore;
+	private List<Marker> quakes;
+
+	private TimeIndex timeIndex;
+	private TimeIndex.Window window;
+	private long windowMillis;
+	// archive milliseconds played per real second
+	private double speed;
+
+	private boolean playing;
+	private long playhead;
+	private long lastFrame = -1;
+
+	// the markers in the window, and the position of each row in that list
+	private EarthquakeMarker[] markersByRow;
+	private List<Marker> active = new ArrayList<Marker>();
+	private int[] activeSlots;
+	// rows that entered or left the window so far
+	private int changes;
+
+	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm 'UTC'");
+
+	/** Starts paused with the window ending at the first quake
+	 *
+	 * @param quakes - the quake markers, all backed by quakeStore
+	 * @param windowMillis - length of the window
+	 * @param speed - archive milliseconds played per second
+	 */
+	public QuakePlayback(QuakeStore quakeStore, List<Marker> quakes, long windowMillis, double speed) {
+		this.quakeStore = quakeStore;
+		this.quakes = quakes;
+		this.windowMillis = windowMillis;
+		this.speed = speed;
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		rebuild();
+	}
+
+	/** Reindexes the quakes after the store or the quake list changed, keeping
+	 * the playhead
+	 */
+	public void rebuild() {
+		timeIndex = new TimeIndex(quakeStore);
+		window = timeIndex.window();
+		markersByRow = new EarthquakeMarker[quakeStore.size()];
+		for (Marker m : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) m;
+			markersByRow[quake.getRow()] = quake;
+		}
+		activeSlots = new int[quakeStore.size()];
+		active.clear();
+		if (playhead == 0) {
+			restart();
+		}
+		else {
+			window.moveTo(playhead - windowMillis, playhead, this);
+		}
+	}
+
+	/** Moves the playhead by the time since the last frame, if playing, and
+	 * the window with it.  Returns true if the active markers changed.
+	 *
+	 * @param nowMillis - the current time, e.g. PApplet.millis()
+	 */
+	public boolean update(long nowMillis) {
+		long elapsed = (lastFrame < 0) ? 0 : Math.min(nowMillis - lastFrame, MAX_FRAME_MILLIS);
+		lastFrame = nowMillis;
+		if (!playing || timeIndex.size() == 0) {
+			return false;
+		}
+		playhead += (long) (elapsed * speed / 1000);
+		if (playhead > timeIndex.getLastTime()) {
+			// the last quake stays in view when playback ends
+			playhead = timeIndex.getLastTime() + 1;
+			playing = false;
+		}
+		int before = changes;
+		window.moveTo(playhead - windowMillis, playhead, this);
+		return changes != before;
+	}
+
+	public void entered(int row) {
+		EarthquakeMarker quake = markersByRow[row];
+		if (quake != null) {
+			activeSlots[row] = active.size();
+			active.add(quake);
+			changes++;
+		}
+	}
+
+	public void left(int row) {
+		EarthquakeMarker quake = markersByRow[row];
+		if (quake != null) {
+			// the last marker takes the leaving marker's slot
+			int slot = activeSlots[row];
+			EarthquakeMarker last = (EarthquakeMarker) active.remove(active.size() - 1);
+			if (last != quake) {
+				active.set(slot, last);
+				activeSlots[last.getRow()] = slot;
+			}
+			changes++;
+		}
+	}
+
+	/** Returns true if the quake is in the window */
+	public boolean isActive(EarthquakeMarker quake) {
+		int row = quake.getRow();
+		if (row >= markersByRow.length || markersByRow[row] != quake) {
+			return false;
+		}
+		int slot = activeSlots[row];
+		return slot < active.size() && active.get(slot) == quake;
+	}
+
+	/** The markers in the window, in no particular order.  The list is kept
+	 * up to date in place, so a marker manager can draw it directly.
+	 */
+	public List<Marker> getActiveMarkers() {
+		return active;
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/** Starts or pauses playback; at the end, starts again from the beginning */
+	public void togglePlaying() {
+		if (!playing && timeIndex.size() > 0 && playhead > timeIndex.getLastTime()) {
+			restart();
+		}
+		playing = !playing;
+	}
+
+	/** Moves the window back to end at the first quake */
+	public void restart() {
+		playhead = (timeIndex.size() == 0) ? 0 : timeIndex.getFirstTime() + 1;
+		window.moveTo(playhead - windowMillis, playhead, this);
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/** Multiplies the speed by the factor, e.g. 2 or 0.5 */
+	public void changeSpeed(double factor) {
+		speed *= factor;
+	}
+
+	public long getPlayhead() {
+		return playhead;
+	}
+
+	/** Draws the playhead's date, the speed and the number of quakes in the
+	 * window on one line in a strip at the given position
+	 */
+	public void draw(PGraphics pg, float x, float y) {
+		pg.pushStyle();
+		pg.noStroke();
+		pg.fill(200);
+		pg.rect(x, y, 650, 30);
+		pg.fill(0);
+		pg.textAlign(PConstants.LEFT, PConstants.CENTER);
+		pg.textSize(12);
+		pg.text(dateFormat.format(new Date(playhead)) + "    " + (playing ? "Playing" : "Paused") +
+				" at " + formatSpeed() + "    " + active.size() + " quake(s) in the last " +
+				(windowMillis / 3600000) + "h", x + 10, y + 15);
+		pg.popStyle();
+	}
+
+	// the speed in archive hours or days per second
+	private String formatSpeed() {
+		double hours = speed / 3600000;
+		if (hours >= 24) {
+			return String.format("%.1f days/s", hours / 24);
+		}
+		return String.format("%.1f h/s", hours);
+	}
+}
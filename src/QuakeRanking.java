@@ -0,0 +1,63 @@
+/** The k top quakes of a store by one key, kept up to date as quakes are
+ * added and removed
+ *
+ * Added quakes are offered to a bounded heap, so keeping the ranking costs
+ * O(log k) per quake.  A removed quake only matters if it is in the top k;
+ * the ranking is then recomputed from the store's live rows the next time it
+ * is read.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeRanking {
+
+	private QuakeStore store;
+	private QuakeKey key;
+	private TopK top;
+	private boolean stale;
+
+	/** Ranks the live rows already in the store */
+	public QuakeRanking(QuakeStore store, QuakeKey key, int k) {
+		this.store = store;
+		this.key = key;
+		top = new TopK(k);
+		rebuild();
+	}
+
+	/** Call after a row has been added to the store */
+	public void added(int row) {
+		if (!stale) {
+			top.offer(row, key.of(store, row));
+		}
+	}
+
+	/** Call after a row has been removed from the store */
+	public void removed(int row) {
+		if (!stale && top.contains(row)) {
+			stale = true;
+		}
+	}
+
+	/** Call after the store was compacted, which moved the rows */
+	public void compacted() {
+		stale = true;
+	}
+
+	/** Returns the top rows, best first; rows of equal key in row order */
+	public int[] getRows() {
+		if (stale) {
+			rebuild();
+		}
+		return top.getRows();
+	}
+
+	private void rebuild() {
+		top.clear();
+		for (int row = 0; row < store.size(); row++) {
+			if (!store.isRemoved(row)) {
+				top.offer(row, key.of(store, row));
+			}
+		}
+		stale = false;
+	}
+}
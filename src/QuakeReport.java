@@ -0,0 +1,163 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+/** The per-country quake counts and the list of largest quakes that the
+ * sketch prints at startup, and the files the batch mode writes
+ *
+ * Countries are listed in the order of the country file, followed by the
+ * quakes that are not in any country.  The largest quakes are the store's
+ * live rows by decreasing magnitude, quakes of equal magnitude in feed order.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeReport {
+
+	/** Label of the quakes outside every country */
+	public static final String OCEAN_QUAKES = "OCEAN QUAKES";
+
+	private QuakeStore quakeStore;
+	private QuakeAggregates aggregates;
+
+	public QuakeReport(QuakeStore quakeStore) {
+		this.quakeStore = quakeStore;
+		aggregates = new QuakeAggregates(quakeStore);
+	}
+
+	/** Recounts the quakes of every country, after the store has changed */
+	public void buildQuakesCounts() {
+		aggregates.aggregate();
+	}
+
+	/** The per-country counts and other aggregates of the live quakes */
+	public QuakeAggregates getAggregates() {
+		return aggregates;
+	}
+
+	/** Prints every country with quakes and its count, then the ocean quakes */
+	public void printQuakes(PrintStream out) {
+		for (int id = 0; id < quakeStore.getCountryCount(); id++) {
+			if (aggregates.getCount(id) > 0) {
+				out.println(quakeStore.getCountryName(id) + ": " + aggregates.getCount(id));
+			}
+		}
+		out.println(OCEAN_QUAKES + ": " + aggregates.getOceanCount());
+	}
+
+	/** Prints the titles of the numToPrint largest quakes */
+	public void sortAndPrint(int numToPrint, PrintStream out) {
+		int[] quakeRows = topRows(numToPrint);
+		for (int i = 0; i < quakeRows.length; i++) {
+			out.println(quakeStore.getTitle(quakeRows[i]));
+		}
+	}
+
+	/** Writes one CSV row per country with quakes, then the ocean quakes */
+	public void writeCountsCsv(PrintWriter out) {
+		out.println("country,quakes");
+		for (int id = 0; id < quakeStore.getCountryCount(); id++) {
+			if (aggregates.getCount(id) > 0) {
+				out.println(csv(quakeStore.getCountryName(id)) + "," + aggregates.getCount(id));
+			}
+		}
+		out.println(OCEAN_QUAKES + "," + aggregates.getOceanCount());
+		out.flush();
+	}
+
+	/** Writes one CSV row per quake for the numToPrint largest quakes */
+	public void writeTopCsv(int numToPrint, PrintWriter out) {
+		out.println("title,magnitude,depth,latitude,longitude,country");
+		for (int row : topRows(numToPrint)) {
+			String country = quakeStore.getCountry(row);
+			out.println(csv(quakeStore.getTitle(row)) + "," + quakeStore.getMagnitude(row) + "," +
+					quakeStore.getDepth(row) + "," + quakeStore.getLat(row) + "," +
+					quakeStore.getLon(row) + "," + ((country == null) ? "" : csv(country)));
+		}
+		out.flush();
+	}
+
+	/** Writes the counts, the numToPrint largest quakes and the threat
+	 * summary of every city, most exposed first, as one JSON object
+	 */
+	public void writeJson(int numToPrint, List<CityThreatTable.Summary> cities, PrintWriter out) {
+		out.println("{");
+		out.println("  \"countries\": [");
+		boolean first = true;
+		for (int id = 0; id < quakeStore.getCountryCount(); id++) {
+			if (aggregates.getCount(id) > 0) {
+				out.print((first ? "" : ",\n") + "    {\"country\": " + json(quakeStore.getCountryName(id)) +
+						", \"quakes\": " + aggregates.getCount(id) + "}");
+				first = false;
+			}
+		}
+		out.println(first ? "  ]," : "\n  ],");
+		out.println("  \"oceanQuakes\": " + aggregates.getOceanCount() + ",");
+
+		out.println("  \"largest\": [");
+		int[] rows = topRows(numToPrint);
+		for (int i = 0; i < rows.length; i++) {
+			int row = rows[i];
+			out.print("    {\"title\": " + json(quakeStore.getTitle(row)) +
+					", \"magnitude\": " + quakeStore.getMagnitude(row) +
+					", \"depth\": " + quakeStore.getDepth(row) +
+					", \"latitude\": " + quakeStore.getLat(row) +
+					", \"longitude\": " + quakeStore.getLon(row) +
+					", \"country\": " + json(quakeStore.getCountry(row)) + "}");
+			out.println((i < rows.length - 1) ? "," : "");
+		}
+		out.println("  ],");
+
+		out.println("  \"cities\": [");
+		for (int i = 0; i < cities.size(); i++) {
+			CityThreatTable.Summary s = cities.get(i);
+			EarthquakeMarker mostRecent = s.getMostRecent();
+			out.print("    {\"city\": " + json(s.getCity().getStringProperty("name")) +
+					", \"country\": " + json(s.getCity().getStringProperty("country")) +
+					", \"quakes\": " + s.getCount() +
+					", \"meanMagnitude\": " + s.getMeanMagnitude() +
+					", \"maxMagnitude\": " + s.getMaxMagnitude() +
+					", \"mostRecent\": " + json((mostRecent == null) ? null : mostRecent.getTitle()) + "}");
+			out.println((i < cities.size() - 1) ? "," : "");
+		}
+		out.println("  ]");
+		out.println("}");
+		out.flush();
+	}
+
+	// the rows of the numToPrint largest quakes, selected without sorting
+	// all of them
+	private int[] topRows(int numToPrint) {
+		return quakeStore.topRows(numToPrint, QuakeKey.MAGNITUDE);
+	}
+
+	private static String csv(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+
+	private static String json(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
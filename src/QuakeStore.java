@@ -0,0 +1,308 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** Column store for the earthquakes read from the feed
+ *
+ * Every quake is one row of parallel primitive arrays: latitude, longitude,
+ * depth, magnitude, time in epoch milliseconds, age category, land/ocean flag
+ * and country id, plus the derived threat circle radius.  Titles are kept once in an interned string
+ * table, and country names once per country.  Earthquake markers hold only
+ * their row, so the feed's property maps can be dropped as soon as a quake
+ * has been added.
+ *
+ * Rows are appended in feed order.  A quake that leaves the feed is flagged
+ * as removed; since new quakes are appended, the live rows are always in the
+ * order of the sketch's quake list.  Removed rows are only reclaimed by
+ * compact, which moves the live rows down in the same order and returns
+ * where each row went, so everything keyed by row can be remapped or
+ * rebuilt.  The store is not thread safe: rows are added, removed and
+ * compacted on the animation thread only.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class QuakeStore {
+
+	/** Country id of quakes that are not inside any country */
+	public static final int OCEAN = -1;
+
+	/** Time of quakes whose feed entry has none; earlier than any time */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private static final byte LAND = 1;
+	private static final byte REMOVED = 2;
+
+	private static final QuakeAge[] AGES = QuakeAge.values();
+
+	private int size;
+	private int removed;
+	private float[] lats = new float[16];
+	private float[] lons = new float[16];
+	private float[] depths = new float[16];
+	private float[] magnitudes = new float[16];
+	private double[] threatRadii = new double[16];
+	private long[] times = new long[16];
+	private byte[] ages = new byte[16];
+	private byte[] flags = new byte[16];
+	private short[] countryIds = new short[16];
+	private int[] titleIds = new int[16];
+
+	// interned titles, and the id of each
+	private String[] titles = new String[16];
+	private int numTitles;
+	private HashMap<String, Integer> titleIndex = new HashMap<String, Integer>();
+
+	private CountryDictionary countries;
+
+	/**
+	 * @param countryNames - country names, indexed by country id
+	 */
+	public QuakeStore(List<String> countryNames) {
+		this(new CountryDictionary(countryNames));
+	}
+
+	/**
+	 * @param countries - the countries whose ids the quakes are added with
+	 */
+	public QuakeStore(CountryDictionary countries) {
+		this.countries = countries;
+	}
+
+	/** Appends a quake read from the feed and returns its row
+	 *
+	 * @param feature - the quake, with "title", "magnitude", "depth" and
+	 *        optionally "time" and "age" properties
+	 * @param countryId - the country it is in, or OCEAN
+	 */
+	public int add(PointFeature feature, int countryId) {
+		if (size == lats.length) {
+			grow();
+		}
+		int row = size++;
+		HashMap<String, Object> properties = feature.getProperties();
+		float magnitude = Float.parseFloat(properties.get("magnitude").toString());
+		lats[row] = feature.getLocation().getLat();
+		lons[row] = feature.getLocation().getLon();
+		depths[row] = Float.parseFloat(properties.get("depth").toString());
+		magnitudes[row] = magnitude;
+		// 20 * 1.8^(2*magnitude-5) miles, in km
+		double miles = 20.0f * Math.pow(1.8, 2*magnitude-5);
+		threatRadii[row] = miles * EarthquakeMarker.kmPerMile;
+		Object time = properties.get("time");
+		times[row] = (time instanceof Number) ? ((Number) time).longValue() : NO_TIME;
+		ages[row] = (byte) QuakeAge.fromTerm((String) properties.get("age")).ordinal();
+		flags[row] = (countryId != OCEAN) ? LAND : 0;
+		countryIds[row] = (short) countryId;
+		titleIds[row] = intern((String) properties.get("title"));
+		return row;
+	}
+
+	/** Flags the row as removed; its values stay readable */
+	public void remove(int row) {
+		if ((flags[row] & REMOVED) == 0) {
+			flags[row] |= REMOVED;
+			removed++;
+		}
+	}
+
+	/** Returns true once at least half the rows are removed, when compacting
+	 * costs no more per removed row than appending did
+	 */
+	public boolean needsCompaction() {
+		return removed > 0 && 2*removed >= size;
+	}
+
+	/** Drops the removed rows, moving the live rows down in the same order,
+	 * and drops the titles only removed rows used.  Returns the new row of
+	 * every old row, or -1 for a removed row; rows held elsewhere, e.g. by
+	 * markers or indexes keyed by row, must be remapped with it.
+	 */
+	public int[] compact() {
+		int[] newRows = new int[size];
+		String[] oldTitles = titles;
+		titles = new String[Math.max(16, numTitles)];
+		numTitles = 0;
+		titleIndex.clear();
+		int live = 0;
+		for (int row = 0; row < size; row++) {
+			if (isRemoved(row)) {
+				newRows[row] = -1;
+				continue;
+			}
+			lats[live] = lats[row];
+			lons[live] = lons[row];
+			depths[live] = depths[row];
+			magnitudes[live] = magnitudes[row];
+			threatRadii[live] = threatRadii[row];
+			times[live] = times[row];
+			ages[live] = ages[row];
+			flags[live] = flags[row];
+			countryIds[live] = countryIds[row];
+			titleIds[live] = intern(oldTitles[titleIds[row]]);
+			newRows[row] = live++;
+		}
+		size = live;
+		removed = 0;
+		return newRows;
+	}
+
+	/** Number of rows, including removed ones */
+	public int size() {
+		return size;
+	}
+
+	/** Number of rows that have not been removed */
+	public int liveCount() {
+		return size - removed;
+	}
+
+	public boolean isRemoved(int row) {
+		return (flags[row] & REMOVED) != 0;
+	}
+
+	public Location getLocation(int row) {
+		return new Location(lats[row], lons[row]);
+	}
+
+	public float getLat(int row) {
+		return lats[row];
+	}
+
+	public float getLon(int row) {
+		return lons[row];
+	}
+
+	public float getDepth(int row) {
+		return depths[row];
+	}
+
+	public float getMagnitude(int row) {
+		return magnitudes[row];
+	}
+
+	public double getThreatRadius(int row) {
+		return threatRadii[row];
+	}
+
+	/** When the quake occurred, in milliseconds since the epoch, or NO_TIME */
+	public long getTime(int row) {
+		return times[row];
+	}
+
+	/** The time of the most recent live quake, or NO_TIME if none has a time */
+	public long getLatestTime() {
+		long latest = NO_TIME;
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				latest = Math.max(latest, times[row]);
+			}
+		}
+		return latest;
+	}
+
+	public QuakeAge getAge(int row) {
+		return AGES[ages[row]];
+	}
+
+	public boolean isOnLand(int row) {
+		return (flags[row] & LAND) != 0;
+	}
+
+	/** The id of the country the quake is in, or OCEAN */
+	public int getCountryId(int row) {
+		return countryIds[row];
+	}
+
+	/** The name of the country the quake is in, or null */
+	public String getCountry(int row) {
+		return isOnLand(row) ? countries.getName(countryIds[row]) : null;
+	}
+
+	/** The countries quakes can be in */
+	public CountryDictionary getCountries() {
+		return countries;
+	}
+
+	/** Number of countries quakes can be in */
+	public int getCountryCount() {
+		return countries.size();
+	}
+
+	public String getCountryName(int countryId) {
+		return countries.getName(countryId);
+	}
+
+	public String getTitle(int row) {
+		return titles[titleIds[row]];
+	}
+
+	/** Returns the live rows ordered by decreasing magnitude.  Quakes of equal
+	 * magnitude stay in row order, as when sorting the markers.
+	 */
+	public int[] rowsByMagnitude() {
+		Integer[] order = new Integer[liveCount()];
+		int n = 0;
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				order[n++] = row;
+			}
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				float magA = magnitudes[a];
+				float magB = magnitudes[b];
+				return (magA > magB) ? -1 : ((magA < magB) ? 1 : 0);
+			}
+		});
+		int[] rows = new int[n];
+		for (int i = 0; i < n; i++) {
+			rows[i] = order[i];
+		}
+		return rows;
+	}
+
+	/** Returns the k live rows with the largest key, best first.  Rows of
+	 * equal key are in row order, as the first k rows of a stable sort.
+	 */
+	public int[] topRows(int k, QuakeKey key) {
+		TopK top = new TopK(Math.min(k, liveCount()));
+		for (int row = 0; row < size; row++) {
+			if (!isRemoved(row)) {
+				top.offer(row, key.of(this, row));
+			}
+		}
+		return top.getRows();
+	}
+
+	private int intern(String title) {
+		Integer id = titleIndex.get(title);
+		if (id == null) {
+			if (numTitles == titles.length) {
+				titles = Arrays.copyOf(titles, 2*numTitles);
+			}
+			id = numTitles;
+			titles[numTitles++] = title;
+			titleIndex.put(title, id);
+		}
+		return id;
+	}
+
+	private void grow() {
+		int capacity = 2*lats.length;
+		lats = Arrays.copyOf(lats, capacity);
+		lons = Arrays.copyOf(lons, capacity);
+		depths = Arrays.copyOf(depths, capacity);
+		magnitudes = Arrays.copyOf(magnitudes, capacity);
+		threatRadii = Arrays.copyOf(threatRadii, capacity);
+		times = Arrays.copyOf(times, capacity);
+		ages = Arrays.copyOf(ages, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		countryIds = Arrays.copyOf(countryIds, capacity);
+		titleIds = Arrays.copyOf(titleIds, capacity);
+	}
+}
@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** Graph of the airline routes between airports
+ *
+ * Airports are numbered densely in the order of the airport list, and each
+ * route in the order of the route list, keeping only routes whose source and
+ * destination are both in the airport list.  The routes leaving and reaching
+ * each airport are kept in compressed row storage: the outgoing routes of
+ * airport a are outRoutes[outStart[a]] to outRoutes[outStart[a + 1] - 1], in
+ * ascending route order, and likewise for the incoming routes.
+ *
+ * The airport locations are held in a ProximityIndex, so the routes touching
+ * the airports near a location are found without scanning every route.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class RouteGraph {
+
+	private static final int[] NONE = new int[0];
+
+	private List<PointFeature> airports;
+	private HashMap<String, Integer> airportIds = new HashMap<String, Integer>();
+	private ProximityIndex airportIndex;
+
+	// source and destination airport of every route
+	private int[] routeSource;
+	private int[] routeDestination;
+	private int skippedRoutes;
+
+	private int[] outStart;
+	private int[] outRoutes;
+	private int[] inStart;
+	private int[] inRoutes;
+
+	/**
+	 * @param airports - airports, as read by ParseFeed.parseAirports
+	 * @param routes - routes, as read by ParseFeed.parseRoutes
+	 */
+	public RouteGraph(List<PointFeature> airports, List<ShapeFeature> routes) {
+		this.airports = airports;
+		List<Location> locations = new ArrayList<Location>();
+		for (int a = 0; a < airports.size(); a++) {
+			airportIds.put(airports.get(a).getId(), a);
+			locations.add(airports.get(a).getLocation());
+		}
+		airportIndex = new ProximityIndex(locations);
+
+		// one pass over the routes, numbering their airports and counting
+		// the routes of every airport
+		int n = airports.size();
+		routeSource = new int[routes.size()];
+		routeDestination = new int[routes.size()];
+		outStart = new int[n + 1];
+		inStart = new int[n + 1];
+		int count = 0;
+		for (ShapeFeature route : routes) {
+			Integer source = airportIds.get(route.getStringProperty("source"));
+			Integer destination = airportIds.get(route.getStringProperty("destination"));
+			if (source == null || destination == null) {
+				skippedRoutes++;
+				continue;
+			}
+			routeSource[count] = source;
+			routeDestination[count] = destination;
+			outStart[source + 1]++;
+			inStart[destination + 1]++;
+			count++;
+		}
+		routeSource = Arrays.copyOf(routeSource, count);
+		routeDestination = Arrays.copyOf(routeDestination, count);
+
+		for (int a = 0; a < n; a++) {
+			outStart[a + 1] += outStart[a];
+			inStart[a + 1] += inStart[a];
+		}
+		outRoutes = new int[count];
+		inRoutes = new int[count];
+		int[] outFill = Arrays.copyOf(outStart, n);
+		int[] inFill = Arrays.copyOf(inStart, n);
+		for (int r = 0; r < count; r++) {
+			outRoutes[outFill[routeSource[r]]++] = r;
+			inRoutes[inFill[routeDestination[r]]++] = r;
+		}
+	}
+
+	/** Number of airports */
+	public int size() {
+		return airports.size();
+	}
+
+	/** Number of routes between known airports */
+	public int getRouteCount() {
+		return routeSource.length;
+	}
+
+	/** Number of routes left out because an airport was not in the list */
+	public int getSkippedRoutes() {
+		return skippedRoutes;
+	}
+
+	/** Returns the number of an airport from its OpenFlights id, or -1 */
+	public int indexOf(String airportId) {
+		Integer a = airportIds.get(airportId);
+		return (a != null) ? a : -1;
+	}
+
+	public PointFeature getAirport(int airport) {
+		return airports.get(airport);
+	}
+
+	public int getSource(int route) {
+		return routeSource[route];
+	}
+
+	public int getDestination(int route) {
+		return routeDestination[route];
+	}
+
+	public int outDegree(int airport) {
+		return outStart[airport + 1] - outStart[airport];
+	}
+
+	public int inDegree(int airport) {
+		return inStart[airport + 1] - inStart[airport];
+	}
+
+	/** Number of routes leaving or reaching the airport */
+	public int degree(int airport) {
+		return outDegree(airport) + inDegree(airport);
+	}
+
+	/** Returns the routes leaving the airport, in ascending order */
+	public int[] getOutgoingRoutes(int airport) {
+		return Arrays.copyOfRange(outRoutes, outStart[airport], outStart[airport + 1]);
+	}
+
+	/** Returns the routes reaching the airport, in ascending order */
+	public int[] getIncomingRoutes(int airport) {
+		return Arrays.copyOfRange(inRoutes, inStart[airport], inStart[airport + 1]);
+	}
+
+	/** Returns the airports reached from the airport, in ascending order and
+	 * without repeats
+	 */
+	public int[] getDestinations(int airport) {
+		int[] neighbors = new int[outDegree(airport)];
+		for (int k = outStart[airport]; k < outStart[airport + 1]; k++) {
+			neighbors[k - outStart[airport]] = routeDestination[outRoutes[k]];
+		}
+		return unique(neighbors, neighbors.length);
+	}
+
+	/** Returns the airports with routes to the airport, in ascending order
+	 * and without repeats
+	 */
+	public int[] getSources(int airport) {
+		int[] neighbors = new int[inDegree(airport)];
+		for (int k = inStart[airport]; k < inStart[airport + 1]; k++) {
+			neighbors[k - inStart[airport]] = routeSource[inRoutes[k]];
+		}
+		return unique(neighbors, neighbors.length);
+	}
+
+	/** Returns the airports within radiusKm of the location, in ascending order */
+	public int[] getAirportsWithin(Location center, double radiusKm) {
+		return airportIndex.within(center, radiusKm);
+	}
+
+	/** Returns the routes leaving or reaching an airport within radiusKm of
+	 * the location, in ascending order
+	 */
+	public int[] getRoutesNear(Location center, double radiusKm) {
+		return getRoutesTouching(getAirportsWithin(center, radiusKm));
+	}
+
+	/** Returns the routes leaving or reaching any of the airports, in
+	 * ascending order
+	 */
+	public int[] getRoutesTouching(int[] airports) {
+		int total = 0;
+		for (int a : airports) {
+			total += degree(a);
+		}
+		if (total == 0) {
+			return NONE;
+		}
+		int[] routes = new int[total];
+		int count = 0;
+		for (int a : airports) {
+			for (int k = outStart[a]; k < outStart[a + 1]; k++) {
+				routes[count++] = outRoutes[k];
+			}
+			for (int k = inStart[a]; k < inStart[a + 1]; k++) {
+				routes[count++] = inRoutes[k];
+			}
+		}
+		return unique(routes, count);
+	}
+
+	// sorts the first count values and drops repeats
+	private static int[] unique(int[] values, int count) {
+		Arrays.sort(values, 0, count);
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			if (size == 0 || values[i] != values[size - 1]) {
+				values[size++] = values[i];
+			}
+		}
+		return (size == values.length) ? values : Arrays.copyOf(values, size);
+	}
+}
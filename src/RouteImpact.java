@@ -0,0 +1,147 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+/** Impact of a set of earthquakes on the airline route network
+ *
+ * An airport is threatened when it lies inside the threat circle of at
+ * least one earthquake, and a route is affected when its source or its
+ * destination is threatened.  For every airport the number of affected
+ * routes leaving or reaching it is counted, both for threatened airports,
+ * all of whose routes are affected, and for the airports at the other end of
+ * those routes, which lose part of their connectivity.
+ *
+ * Threatened airports are found with one radius query per earthquake on the
+ * airport index of the RouteGraph, and affected routes through its adjacency
+ * arrays, so the cost grows with the number of quakes and affected routes
+ * rather than with their product with all airports and routes.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class RouteImpact {
+
+	private RouteGraph graph;
+
+	private boolean[] threatened;
+	private int[] threatenedAirports;
+	private int[] affectedRoutes;
+	// affected routes leaving or reaching each airport
+	private int[] affectedCount;
+	private int[] rankedAirports;
+
+	/**
+	 * @param graph - the route network
+	 * @param quakes - the earthquake markers, with their threat circles
+	 */
+	public RouteImpact(RouteGraph graph, List<? extends Marker> quakes) {
+		this.graph = graph;
+		int n = graph.size();
+
+		threatened = new boolean[n];
+		int count = 0;
+		for (Marker marker : quakes) {
+			EarthquakeMarker quake = (EarthquakeMarker) marker;
+			for (int a : graph.getAirportsWithin(quake.getLocation(), quake.threatCircle())) {
+				if (!threatened[a]) {
+					threatened[a] = true;
+					count++;
+				}
+			}
+		}
+		threatenedAirports = new int[count];
+		count = 0;
+		for (int a = 0; a < n; a++) {
+			if (threatened[a]) {
+				threatenedAirports[count++] = a;
+			}
+		}
+
+		affectedRoutes = graph.getRoutesTouching(threatenedAirports);
+		affectedCount = new int[n];
+		for (int r : affectedRoutes) {
+			// a route from an airport to itself counts twice, as in its degree
+			affectedCount[graph.getSource(r)]++;
+			affectedCount[graph.getDestination(r)]++;
+		}
+		rank();
+	}
+
+	public RouteGraph getGraph() {
+		return graph;
+	}
+
+	public boolean isThreatened(int airport) {
+		return threatened[airport];
+	}
+
+	/** Returns the airports inside a threat circle, in ascending order */
+	public int[] getThreatenedAirports() {
+		return threatenedAirports.clone();
+	}
+
+	/** Returns the routes from or to a threatened airport, in ascending order */
+	public int[] getAffectedRoutes() {
+		return affectedRoutes.clone();
+	}
+
+	public int getAffectedRouteCount() {
+		return affectedRoutes.length;
+	}
+
+	/** Number of affected routes leaving or reaching the airport */
+	public int getAffectedRouteCount(int airport) {
+		return affectedCount[airport];
+	}
+
+	/** Fraction of the routes leaving or reaching the airport that are
+	 * affected, 0 for an airport without routes
+	 */
+	public float getAffectedFraction(int airport) {
+		int degree = graph.degree(airport);
+		return (degree == 0) ? 0 : (float) affectedCount[airport] / degree;
+	}
+
+	/** Returns the airports with affected routes, by decreasing number of
+	 * affected routes, then by decreasing fraction of their routes affected,
+	 * then in ascending order
+	 */
+	public int[] getRankedAirports() {
+		return rankedAirports.clone();
+	}
+
+	private void rank() {
+		int count = 0;
+		for (int a = 0; a < affectedCount.length; a++) {
+			if (affectedCount[a] > 0) {
+				count++;
+			}
+		}
+		Integer[] airports = new Integer[count];
+		count = 0;
+		for (int a = 0; a < affectedCount.length; a++) {
+			if (affectedCount[a] > 0) {
+				airports[count++] = a;
+			}
+		}
+		Arrays.sort(airports, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (affectedCount[a] != affectedCount[b]) {
+					return (affectedCount[a] > affectedCount[b]) ? -1 : 1;
+				}
+				float fractionA = getAffectedFraction(a);
+				float fractionB = getAffectedFraction(b);
+				if (fractionA != fractionB) {
+					return (fractionA > fractionB) ? -1 : 1;
+				}
+				return a.compareTo(b);
+			}
+		});
+		rankedAirports = new int[count];
+		for (int i = 0; i < count; i++) {
+			rankedAirports[i] = airports[i];
+		}
+	}
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+
+/** Screen-space hit-test index for the markers on a map
+ *
+ * Markers are projected to the screen and registered in the cells of a
+ * uniform grid covered by their hit circle.  Finding the marker under the
+ * mouse then only runs Marker.isInside on the markers of one cell.  The grid
+ * is rebuilt lazily, on the first query after the map has been panned or
+ * zoomed or after invalidate has been called.  Hidden markers are never
+ * hit, so invalidate must also be called when markers are shown or hidden.
+ *
+ * The marker lists are searched in the order they were given, so the marker
+ * returned is the one a loop calling isInside over the lists would have
+ * found first.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class ScreenHitIndex {
+
+	/** Width and height of a grid cell, in pixels */
+	public static final int CELL_SIZE = 32;
+
+	// Extra pixels around every hit circle, to absorb float rounding
+	private static final float MARGIN = 1;
+
+	// Two locations whose screen positions identify the map transform
+	private static final Location REFERENCE_1 = new Location(0, 0);
+	private static final Location REFERENCE_2 = new Location(45, 90);
+
+	private UnfoldingMap map;
+	private List<List<Marker>> markerLists;
+	private int cols;
+	private int rows;
+
+	// all markers in search order, and the grid of their indices
+	private List<Marker> markers = new ArrayList<Marker>();
+	private int[][] cells;
+	private int[] cellSizes;
+
+	private boolean valid;
+	private float[] transform = new float[4];
+
+	/**
+	 * @param map - the map the markers are drawn on
+	 * @param width - width of the sketch window
+	 * @param height - height of the sketch window
+	 * @param markerLists - the markers, in the order they are searched
+	 */
+	public ScreenHitIndex(UnfoldingMap map, int width, int height, List<List<Marker>> markerLists) {
+		this.map = map;
+		this.markerLists = markerLists;
+		this.cols = (width + CELL_SIZE - 1) / CELL_SIZE;
+		this.rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+		cells = new int[rows*cols][];
+		cellSizes = new int[rows*cols];
+	}
+
+	/** Forces a rebuild on the next query, e.g. after markers were added,
+	 * shown or hidden
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/** Returns the first visible marker under the screen position, or null */
+	public Marker firstHit(float x, float y) {
+		int col = (int) Math.floor(x / CELL_SIZE);
+		int row = (int) Math.floor(y / CELL_SIZE);
+		if (col < 0 || col >= cols || row < 0 || row >= rows) {
+			// outside the window: nothing is indexed there, search everything
+			for (List<Marker> list : markerLists) {
+				for (Marker m : list) {
+					if (!m.isHidden() && m.isInside(map, x, y)) {
+						return m;
+					}
+				}
+			}
+			return null;
+		}
+
+		update();
+		int cell = row*cols + col;
+		for (int k = 0; k < cellSizes[cell]; k++) {
+			Marker m = markers.get(cells[cell][k]);
+			if (!m.isHidden() && m.isInside(map, x, y)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	// rebuilds the grid if the markers or the map transform changed
+	private void update() {
+		ScreenPosition p1 = map.getScreenPosition(REFERENCE_1);
+		ScreenPosition p2 = map.getScreenPosition(REFERENCE_2);
+		if (valid && p1.x == transform[0] && p1.y == transform[1] &&
+				p2.x == transform[2] && p2.y == transform[3]) {
+			return;
+		}
+		transform[0] = p1.x;
+		transform[1] = p1.y;
+		transform[2] = p2.x;
+		transform[3] = p2.y;
+
+		markers.clear();
+		for (List<Marker> list : markerLists) {
+			markers.addAll(list);
+		}
+		Arrays.fill(cellSizes, 0);
+		for (int i = 0; i < markers.size(); i++) {
+			Marker m = markers.get(i);
+			if (m.isHidden()) {
+				continue;
+			}
+			ScreenPosition pos = map.getScreenPosition(m.getLocation());
+			float r = hitRadius(m) + MARGIN;
+			int colMin = Math.max(0, (int) Math.floor((pos.x - r) / CELL_SIZE));
+			int colMax = Math.min(cols - 1, (int) Math.floor((pos.x + r) / CELL_SIZE));
+			int rowMin = Math.max(0, (int) Math.floor((pos.y - r) / CELL_SIZE));
+			int rowMax = Math.min(rows - 1, (int) Math.floor((pos.y + r) / CELL_SIZE));
+			for (int row = rowMin; row <= rowMax; row++) {
+				for (int col = colMin; col <= colMax; col++) {
+					add(row*cols + col, i);
+				}
+			}
+		}
+		valid = true;
+	}
+
+	// indices are added in ascending order, so each cell stays sorted
+	private void add(int cell, int i) {
+		if (cells[cell] == null) {
+			cells[cell] = new int[4];
+		}
+		else if (cellSizes[cell] == cells[cell].length) {
+			cells[cell] = Arrays.copyOf(cells[cell], 2*cellSizes[cell]);
+		}
+		cells[cell][cellSizes[cell]++] = i;
+	}
+
+	private static float hitRadius(Marker m) {
+		return ((CommonMarker) m).getHitRadius();
+	}
+}
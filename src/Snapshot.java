@@ -0,0 +1,463 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.MultiFeature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.data.ShapeFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** Binary snapshot of the parsed data files, to skip parsing on later starts
+ *
+ * A snapshot holds the country and city features as read from their GeoJSON
+ * files and, when the feed is a local file, every quake of the feed with its
+ * <updated> timestamp and the country it was classified into.  It is written
+ * after a full parse and read on the next start.
+ *
+ * The file starts with a magic number, the format version, the length and
+ * the CRC32 of the payload.  The header is checked before the payload is
+ * read, and the file is closed before load returns, so an older snapshot can
+ * be replaced right away.  The payload starts with a key for each source file
+ * (its name, size, modification time and CRC32), so the snapshot is only
+ * used while none of the sources has changed.  The keys are taken with
+ * Sources.of before the sources are parsed, so a source changed during the
+ * parse makes the snapshot stale instead of matching the new file.  A
+ * missing, corrupt, stale or older snapshot is ignored, and the caller parses
+ * the sources instead.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class Snapshot {
+
+	/** Bumped whenever the layout below changes */
+	public static final int VERSION = 2;
+
+	private static final int MAGIC = 0x45515350;  // "EQSP"
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Feature.FeatureType[] TYPES = Feature.FeatureType.values();
+
+	// property value types
+	private static final byte STRING = 0;
+	private static final byte FLOAT = 1;
+	private static final byte INTEGER = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte LONG = 5;
+
+	/** The keys of the source files a snapshot is written from and checked
+	 * against
+	 */
+	public static class Sources {
+		private final Key country;
+		private final Key city;
+		private final Key feed;
+
+		private Sources(Key country, Key city, Key feed) {
+			this.country = country;
+			this.city = city;
+			this.feed = feed;
+		}
+
+		/** Takes the keys of the sources as they are now
+		 *
+		 * @param feedFile - the local feed file, or null if the feed is a URL
+		 */
+		public static Sources of(File countryFile, File cityFile, File feedFile) throws IOException {
+			return new Sources(Key.of(countryFile), Key.of(cityFile),
+					(feedFile != null) ? Key.of(feedFile) : null);
+		}
+	}
+
+	// name, size, modification time and CRC32 of a source file
+	private static class Key {
+		private final String name;
+		private final long length;
+		private final long modified;
+		private final long checksum;
+
+		private Key(String name, long length, long modified, long checksum) {
+			this.name = name;
+			this.length = length;
+			this.modified = modified;
+			this.checksum = checksum;
+		}
+
+		private static Key of(File source) throws IOException {
+			// the time and size first, so a write during the checksum
+			// leaves a key that no longer matches
+			long length = source.length();
+			long modified = source.lastModified();
+			return new Key(source.getName(), length, modified, checksum(source));
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeString(out, name);
+			out.writeLong(length);
+			out.writeLong(modified);
+			out.writeLong(checksum);
+		}
+
+		private boolean matches(ByteBuffer in) {
+			String name = readString(in);
+			long length = in.getLong();
+			long modified = in.getLong();
+			long checksum = in.getLong();
+			return this.name.equals(name) && this.length == length &&
+					this.modified == modified && this.checksum == checksum;
+		}
+	}
+
+	public final List<Feature> countries;
+	public final List<Feature> cities;
+
+	/** The quakes of the feed in feed order, or null if the feed is not cached */
+	public final List<PointFeature> quakes;
+	public final List<String> quakeUpdated;
+	public final int[] quakeCountryIds;
+
+	/**
+	 * @param quakes - the feed's quakes, or null not to cache the feed
+	 * @param quakeUpdated - the <updated> timestamp of each quake
+	 * @param quakeCountryIds - the country id of each quake, or QuakeStore.OCEAN
+	 */
+	public Snapshot(List<Feature> countries, List<Feature> cities,
+			List<PointFeature> quakes, List<String> quakeUpdated, int[] quakeCountryIds) {
+		this.countries = countries;
+		this.cities = cities;
+		this.quakes = quakes;
+		this.quakeUpdated = quakeUpdated;
+		this.quakeCountryIds = quakeCountryIds;
+	}
+
+	/** Loads the snapshot if it was written from the given sources as they
+	 * were when their keys were taken, otherwise returns null.
+	 */
+	public static Snapshot load(File file, Sources sources) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer in;
+			DataInputStream fileIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (file.length() < HEADER_BYTES || fileIn.readInt() != MAGIC || fileIn.readInt() != VERSION) {
+					return null;
+				}
+				int length = fileIn.readInt();
+				long checksum = fileIn.readLong();
+				if (length != file.length() - HEADER_BYTES) {
+					return null;
+				}
+				byte[] payload = new byte[length];
+				fileIn.readFully(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if (crc.getValue() != checksum) {
+					return null;
+				}
+				in = ByteBuffer.wrap(payload);
+			}
+			finally {
+				fileIn.close();
+			}
+			return read(in, sources);
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (RuntimeException e) {
+			// a truncated or malformed payload
+			return null;
+		}
+	}
+
+	/** Writes the snapshot, keyed by the sources as they were when their
+	 * keys were taken.  The file is replaced only once it is complete.
+	 */
+	public void save(File file, Sources sources) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		sources.country.write(out);
+		sources.city.write(out);
+		boolean hasFeed = quakes != null && sources.feed != null;
+		out.writeBoolean(hasFeed);
+		if (hasFeed) {
+			sources.feed.write(out);
+		}
+		writeFeatures(out, countries);
+		writeFeatures(out, cities);
+		if (hasFeed) {
+			out.writeInt(quakes.size());
+			for (int i = 0; i < quakes.size(); i++) {
+				writeFeature(out, quakes.get(i));
+				writeString(out, quakeUpdated.get(i));
+				out.writeInt(quakeCountryIds[i]);
+			}
+		}
+		out.flush();
+		byte[] payload = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream fileOut = new DataOutputStream(new FileOutputStream(temp));
+		try {
+			fileOut.writeInt(MAGIC);
+			fileOut.writeInt(VERSION);
+			fileOut.writeInt(payload.length);
+			fileOut.writeLong(crc.getValue());
+			fileOut.write(payload);
+		}
+		finally {
+			fileOut.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not replace " + file);
+		}
+		if (!temp.renameTo(file)) {
+			throw new IOException("Could not write " + file);
+		}
+	}
+
+	private static Snapshot read(ByteBuffer in, Sources sources) {
+		if (!sources.country.matches(in) || !sources.city.matches(in)) {
+			return null;
+		}
+		boolean hasFeed = in.get() != 0;
+		// a cached feed must be the current local feed, and a local feed
+		// must be cached
+		if (hasFeed != (sources.feed != null) || (hasFeed && !sources.feed.matches(in))) {
+			return null;
+		}
+		List<Feature> countries = readFeatures(in);
+		List<Feature> cities = readFeatures(in);
+		if (!hasFeed) {
+			return new Snapshot(countries, cities, null, null, null);
+		}
+		int n = in.getInt();
+		List<PointFeature> quakes = new ArrayList<PointFeature>(n);
+		List<String> updated = new ArrayList<String>(n);
+		int[] countryIds = new int[n];
+		for (int i = 0; i < n; i++) {
+			quakes.add((PointFeature) readFeature(in));
+			updated.add(readString(in));
+			countryIds[i] = in.getInt();
+		}
+		return new Snapshot(countries, cities, quakes, updated, countryIds);
+	}
+
+	private static long checksum(File source) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[64*1024];
+		InputStream in = new FileInputStream(source);
+		try {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, n);
+			}
+		}
+		finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	private static void writeFeatures(DataOutputStream out, List<? extends Feature> features) throws IOException {
+		out.writeInt(features.size());
+		for (Feature feature : features) {
+			writeFeature(out, feature);
+		}
+	}
+
+	private static List<Feature> readFeatures(ByteBuffer in) {
+		int n = in.getInt();
+		List<Feature> features = new ArrayList<Feature>(n);
+		for (int i = 0; i < n; i++) {
+			features.add(readFeature(in));
+		}
+		return features;
+	}
+
+	private static void writeFeature(DataOutputStream out, Feature feature) throws IOException {
+		out.writeByte(feature.getType().ordinal());
+		writeString(out, feature.getId());
+		writeProperties(out, feature.getProperties());
+		if (feature instanceof PointFeature) {
+			writeLocation(out, ((PointFeature) feature).getLocation());
+		}
+		else if (feature instanceof ShapeFeature) {
+			ShapeFeature shape = (ShapeFeature) feature;
+			writeLocations(out, shape.getLocations());
+			List<List<Location>> rings = shape.getInteriorRings();
+			out.writeInt((rings == null) ? 0 : rings.size());
+			if (rings != null) {
+				for (List<Location> ring : rings) {
+					writeLocations(out, ring);
+				}
+			}
+		}
+		else if (feature instanceof MultiFeature) {
+			writeFeatures(out, ((MultiFeature) feature).getFeatures());
+		}
+		else {
+			throw new IOException("Cannot store feature " + feature.getClass().getName());
+		}
+	}
+
+	private static Feature readFeature(ByteBuffer in) {
+		Feature.FeatureType type = TYPES[in.get()];
+		String id = readString(in);
+		HashMap<String, Object> properties = readProperties(in);
+		Feature feature;
+		if (type == Feature.FeatureType.POINT) {
+			feature = new PointFeature(readLocation(in));
+		}
+		else if (type == Feature.FeatureType.MULTI) {
+			MultiFeature multi = new MultiFeature();
+			multi.setFeatures(readFeatures(in));
+			feature = multi;
+		}
+		else {
+			ShapeFeature shape = new ShapeFeature(type);
+			for (Location location : readLocations(in)) {
+				shape.addLocation(location);
+			}
+			int rings = in.getInt();
+			for (int r = 0; r < rings; r++) {
+				shape.addInteriorRing(readLocations(in));
+			}
+			feature = shape;
+		}
+		feature.setId(id);
+		feature.setProperties(properties);
+		return feature;
+	}
+
+	private static void writeProperties(DataOutputStream out, HashMap<String, Object> properties) throws IOException {
+		if (properties == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(properties.size());
+		for (Map.Entry<String, Object> entry : properties.entrySet()) {
+			writeString(out, entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof String) {
+				out.writeByte(STRING);
+				writeString(out, (String) value);
+			}
+			else if (value instanceof Float) {
+				out.writeByte(FLOAT);
+				out.writeFloat((Float) value);
+			}
+			else if (value instanceof Integer) {
+				out.writeByte(INTEGER);
+				out.writeInt((Integer) value);
+			}
+			else if (value instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			}
+			else if (value instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			}
+			else if (value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			}
+			else {
+				throw new IOException("Cannot store property " + entry.getKey() + " of type " +
+						((value == null) ? "null" : value.getClass().getName()));
+			}
+		}
+	}
+
+	private static HashMap<String, Object> readProperties(ByteBuffer in) {
+		int n = in.getInt();
+		if (n < 0) {
+			return null;
+		}
+		HashMap<String, Object> properties = new HashMap<String, Object>();
+		for (int i = 0; i < n; i++) {
+			String key = readString(in);
+			byte type = in.get();
+			Object value;
+			switch (type) {
+			case STRING: value = readString(in); break;
+			case FLOAT: value = in.getFloat(); break;
+			case INTEGER: value = in.getInt(); break;
+			case DOUBLE: value = in.getDouble(); break;
+			case BOOLEAN: value = (in.get() != 0); break;
+			case LONG: value = in.getLong(); break;
+			default: throw new IllegalStateException("Unknown property type " + type);
+			}
+			properties.put(key, value);
+		}
+		return properties;
+	}
+
+	private static void writeLocations(DataOutputStream out, List<Location> locations) throws IOException {
+		out.writeInt(locations.size());
+		for (Location location : locations) {
+			writeLocation(out, location);
+		}
+	}
+
+	private static List<Location> readLocations(ByteBuffer in) {
+		int n = in.getInt();
+		List<Location> locations = new ArrayList<Location>(n);
+		for (int i = 0; i < n; i++) {
+			locations.add(readLocation(in));
+		}
+		return locations;
+	}
+
+	private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+		out.writeFloat(location.getLat());
+		out.writeFloat(location.getLon());
+	}
+
+	private static Location readLocation(ByteBuffer in) {
+		float lat = in.getFloat();
+		float lon = in.getFloat();
+		return new Location(lat, lon);
+	}
+
+	// UTF-8 bytes preceded by their number, -1 for null
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int n = in.getInt();
+		if (n < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[n];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,210 @@
+import java.util.Arrays;
+
+/** The live quakes of a QuakeStore ordered by time, for range queries and a
+ * sliding time window
+ *
+ * The rows with a time are kept in two parallel arrays sorted by time, rows
+ * of equal time in row order, so the quakes of any time range are one run of
+ * positions found with two binary searches.  A Window remembers the run it
+ * covers; moving it only visits the rows entering or leaving it, so scrubbing
+ * a short window over a long archive costs the rows that change, not the
+ * rows in the window.
+ *
+ * The index is a snapshot: call rebuild after rows were added to or removed
+ * from the store.  Rows without a time are not indexed.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class TimeIndex {
+
+	/** Told about the rows a Window gains and loses as it moves */
+	public interface WindowListener {
+		void entered(int row);
+		void left(int row);
+	}
+
+	private QuakeStore quakeStore;
+	private int size;
+	private int[] rows;
+	private long[] times;
+	// the position of every store row in rows, or -1 if it is not indexed
+	private int[] positions;
+
+	public TimeIndex(QuakeStore quakeStore) {
+		this.quakeStore = quakeStore;
+		rebuild();
+	}
+
+	/** Reindexes the live rows of the store, after the store has changed */
+	public void rebuild() {
+		int n = 0;
+		int[] order = new int[quakeStore.liveCount()];
+		for (int row = 0; row < quakeStore.size(); row++) {
+			if (!quakeStore.isRemoved(row) && quakeStore.getTime(row) != QuakeStore.NO_TIME) {
+				order[n++] = row;
+			}
+		}
+		size = n;
+		rows = sortByTime(order, n);
+		times = new long[n];
+		positions = new int[quakeStore.size()];
+		Arrays.fill(positions, -1);
+		for (int i = 0; i < n; i++) {
+			times[i] = quakeStore.getTime(rows[i]);
+			positions[rows[i]] = i;
+		}
+	}
+
+	/** Number of indexed rows */
+	public int size() {
+		return size;
+	}
+
+	/** The row at a position, positions being ordered by time */
+	public int getRow(int position) {
+		return rows[position];
+	}
+
+	public long getTime(int position) {
+		return times[position];
+	}
+
+	/** Time of the earliest indexed quake, or QuakeStore.NO_TIME if none */
+	public long getFirstTime() {
+		return (size == 0) ? QuakeStore.NO_TIME : times[0];
+	}
+
+	/** Time of the latest indexed quake, or QuakeStore.NO_TIME if none */
+	public long getLastTime() {
+		return (size == 0) ? QuakeStore.NO_TIME : times[size - 1];
+	}
+
+	/** The first position whose time is at or after the given time, or size()
+	 * if there is none
+	 */
+	public int firstAtOrAfter(long time) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] < time) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/** Number of quakes from the time from, inclusive, to the time to,
+	 * exclusive
+	 */
+	public int count(long from, long to) {
+		return Math.max(0, firstAtOrAfter(to) - firstAtOrAfter(from));
+	}
+
+	/** The rows of the quakes from the time from, inclusive, to the time to,
+	 * exclusive, in time order
+	 */
+	public int[] rowsBetween(long from, long to) {
+		int start = firstAtOrAfter(from);
+		int end = Math.max(start, firstAtOrAfter(to));
+		return Arrays.copyOfRange(rows, start, end);
+	}
+
+	/** Returns true if the row is indexed and its time is in [from, to) */
+	public boolean isBetween(int row, long from, long to) {
+		if (row >= positions.length || positions[row] < 0) {
+			return false;
+		}
+		long time = times[positions[row]];
+		return time >= from && time < to;
+	}
+
+	/** Returns a window over this index covering no quakes */
+	public Window window() {
+		return new Window();
+	}
+
+	/** A time range [from, to) over the index, moved with moveTo */
+	public class Window {
+		private int start;
+		private int end;
+
+		private Window() {
+		}
+
+		/** Moves the window to [from, to) and tells the listener about every
+		 * row that entered or left it, each once
+		 */
+		public void moveTo(long from, long to, WindowListener listener) {
+			int newStart = firstAtOrAfter(from);
+			int newEnd = Math.max(newStart, firstAtOrAfter(to));
+			// rows of [start, end) outside [newStart, newEnd), then the reverse
+			for (int i = start; i < Math.min(end, newStart); i++) {
+				listener.left(rows[i]);
+			}
+			for (int i = Math.max(start, newEnd); i < end; i++) {
+				listener.left(rows[i]);
+			}
+			for (int i = newStart; i < Math.min(newEnd, start); i++) {
+				listener.entered(rows[i]);
+			}
+			for (int i = Math.max(newStart, end); i < newEnd; i++) {
+				listener.entered(rows[i]);
+			}
+			start = newStart;
+			end = newEnd;
+		}
+
+		/** Forgets the covered range without telling anyone, e.g. after the
+		 * index was rebuilt; the next move reports every row in the new range
+		 */
+		public void reset() {
+			start = 0;
+			end = 0;
+		}
+
+		/** Number of quakes in the window */
+		public int size() {
+			return end - start;
+		}
+
+		/** Returns true if the row is in the window */
+		public boolean contains(int row) {
+			if (row >= positions.length) {
+				return false;
+			}
+			int position = positions[row];
+			return position >= start && position < end;
+		}
+	}
+
+	// the first n rows sorted by time with a stable merge sort, so rows of
+	// equal time stay in row order
+	private int[] sortByTime(int[] order, int n) {
+		int[] from = Arrays.copyOf(order, n);
+		int[] to = new int[n];
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2*width) {
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + 2*width, n);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					to[k++] = (quakeStore.getTime(from[j]) < quakeStore.getTime(from[i])) ? from[j++] : from[i++];
+				}
+				while (i < mid) {
+					to[k++] = from[i++];
+				}
+				while (j < hi) {
+					to[k++] = from[j++];
+				}
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		return from;
+	}
+}
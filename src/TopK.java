@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/** Selects the k rows with the largest keys from a stream of rows
+ *
+ * The selected rows are kept in a bounded heap whose root is the worst of
+ * them, so offering n rows takes O(n log k) time and O(k) memory instead of
+ * sorting all n.  The heap grows with the rows offered, up to k, so a k
+ * far larger than the number of rows costs no more than the rows.  Rows
+ * with equal keys are ranked by ascending row, so the result is exactly
+ * the first k rows of a stable sort by decreasing key.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class TopK {
+
+	private int k;
+	private int size;
+	private double[] keys;
+	private int[] rows;
+
+	// capacity of a new heap, if k is larger
+	private static final int INITIAL_CAPACITY = 16;
+
+	public TopK(int k) {
+		this.k = Math.max(0, k);
+		keys = new double[Math.min(this.k, INITIAL_CAPACITY)];
+		rows = new int[keys.length];
+	}
+
+	/** Number of rows selected so far, at most k */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/** Offers a row with its key; the row is kept if it is among the k best
+	 * so far
+	 */
+	public void offer(int row, double key) {
+		if (size < k) {
+			if (size == keys.length) {
+				int capacity = (int) Math.min(k, 2L*size);
+				keys = Arrays.copyOf(keys, capacity);
+				rows = Arrays.copyOf(rows, capacity);
+			}
+			int i = size++;
+			keys[i] = key;
+			rows[i] = row;
+			siftUp(i);
+		}
+		else if (k > 0 && isBetter(key, row, keys[0], rows[0])) {
+			keys[0] = key;
+			rows[0] = row;
+			siftDown(0);
+		}
+	}
+
+	/** Returns true if the row is among the rows selected so far */
+	public boolean contains(int row) {
+		for (int i = 0; i < size; i++) {
+			if (rows[i] == row) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns the selected rows, best first */
+	public int[] getRows() {
+		// heap sort a copy: repeatedly move the worst to the end
+		double[] sortedKeys = Arrays.copyOf(keys, size);
+		int[] sortedRows = Arrays.copyOf(rows, size);
+		for (int end = size - 1; end > 0; end--) {
+			swap(sortedKeys, sortedRows, 0, end);
+			siftDown(sortedKeys, sortedRows, 0, end);
+		}
+		return sortedRows;
+	}
+
+	// a ranks before b: larger key, or equal key and smaller row
+	private static boolean isBetter(double keyA, int rowA, double keyB, int rowB) {
+		return keyA > keyB || (keyA == keyB && rowA < rowB);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			// the worst row is at the root
+			if (!isBetter(keys[parent], rows[parent], keys[i], rows[i])) {
+				break;
+			}
+			swap(keys, rows, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		siftDown(keys, rows, i, size);
+	}
+
+	private static void siftDown(double[] keys, int[] rows, int i, int size) {
+		while (true) {
+			int worst = i;
+			int left = 2*i + 1;
+			int right = left + 1;
+			if (left < size && isBetter(keys[worst], rows[worst], keys[left], rows[left])) {
+				worst = left;
+			}
+			if (right < size && isBetter(keys[worst], rows[worst], keys[right], rows[right])) {
+				worst = right;
+			}
+			if (worst == i) {
+				return;
+			}
+			swap(keys, rows, i, worst);
+			i = worst;
+		}
+	}
+
+	private static void swap(double[] keys, int[] rows, int i, int j) {
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+	}
+}
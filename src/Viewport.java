@@ -0,0 +1,105 @@
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/** The geographic bounds of the part of the world the map shows, for
+ * skipping markers that cannot appear on screen
+ *
+ * The bounds are computed once per frame by unprojecting the corners of the
+ * map's rectangle, grown by MARGIN_PIXELS so that markers centred just off
+ * the edge but reaching into the map are still drawn.  Markers are then
+ * tested against four numbers instead of being projected.
+ *
+ * Longitudes are kept as the map reports them, which can run past +/-180
+ * when the view crosses the antimeridian.  The map draws a marker at its own
+ * longitude only, never at a copy one turn east or west, so against such
+ * bounds a marker is inside exactly when its longitude is between them.
+ * Bounds given the other way across the antimeridian, with the east bound
+ * less than the west bound, do not say which copy of the world is shown;
+ * then a longitude is inside if it or either copy is between them.  When the
+ * view spans the whole world every longitude is inside.
+ *
+ * @author Hamadi McIntosh
+ *
+ */
+public class Viewport {
+
+	/** Distance off the map's edge, in pixels, at which markers are still
+	 * drawn; more than the radius of any marker
+	 */
+	public static final float MARGIN_PIXELS = 32;
+
+	private float north = 90;
+	private float south = -90;
+	private float west = -180;
+	private float east = 180;
+	private boolean allLongitudes = true;
+	// true if the bounds were wrapped, so copies of a longitude are tested
+	private boolean wrapped;
+
+	/** Recomputes the bounds from the map's current position and zoom */
+	public void update(UnfoldingMap map) {
+		float x = map.mapDisplay.offsetX;
+		float y = map.mapDisplay.offsetY;
+		Location topLeft = map.getLocation(x - MARGIN_PIXELS, y - MARGIN_PIXELS);
+		Location bottomRight = map.getLocation(x + map.getWidth() + MARGIN_PIXELS,
+				y + map.getHeight() + MARGIN_PIXELS);
+		set(topLeft.getLat(), bottomRight.getLat(), topLeft.getLon(), bottomRight.getLon());
+	}
+
+	/** Sets the bounds directly.  An east bound less than the west bound is
+	 * taken to cross the antimeridian.
+	 */
+	public void set(float north, float south, float west, float east) {
+		this.north = Math.max(north, south);
+		this.south = Math.min(north, south);
+		wrapped = (east < west);
+		if (wrapped) {
+			east += 360;
+		}
+		this.west = west;
+		this.east = east;
+		allLongitudes = (east - west >= 360);
+	}
+
+	public boolean contains(Location location) {
+		return contains(location.getLat(), location.getLon());
+	}
+
+	public boolean contains(float lat, float lon) {
+		return lat >= south && lat <= north && containsLongitude(lon);
+	}
+
+	/** Returns false if the straight line between the two locations cannot
+	 * cross the view, because both ends are beyond the same bound
+	 */
+	public boolean mayIntersect(Location a, Location b) {
+		float latA = a.getLat(), latB = b.getLat();
+		if ((latA > north && latB > north) || (latA < south && latB < south)) {
+			return false;
+		}
+		if (allLongitudes) {
+			return true;
+		}
+		float lonA = a.getLon(), lonB = b.getLon();
+		int turns = wrapped ? 360 : 0;
+		for (int turn = -turns; turn <= turns; turn += 360) {
+			boolean bothWest = lonA + turn < west && lonB + turn < west;
+			boolean bothEast = lonA + turn > east && lonB + turn > east;
+			if (!bothWest && !bothEast) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean containsLongitude(float lon) {
+		if (allLongitudes) {
+			return true;
+		}
+		if (lon >= west && lon <= east) {
+			return true;
+		}
+		return wrapped && ((lon + 360 >= west && lon + 360 <= east) ||
+				(lon - 360 >= west && lon - 360 <= east));
+	}
+}
@@ -0,0 +1,251 @@
+package parsing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * Streaming reader for comma separated files such as airports.dat and the
+ * World Bank CSV files.  Rows are read one at a time from a Reader, so the
+ * file is never held in memory as a whole, and each row is split in a single
+ * pass over its characters.
+ *
+ * Rows are split exactly as
+ *   row.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)")
+ * splits them: a comma separates two columns if it is followed by an even
+ * number of quotes in the rest of the row, so commas inside quoted values,
+ * including values with doubled "" quotes, do not split.  As with the regex,
+ * quotes are left in the column values and trailing empty columns are
+ * dropped.  Lines end at \n, \r or \r\n, as for PApplet.loadStrings.
+ */
+public class CsvReader {
+
+	private Reader reader;
+	private char[] buffer = new char[8192];
+	private int position;
+	private int limit;
+	// a \r ended the last row, so a following \n belongs to it
+	private boolean skipNewline;
+	private boolean finished;
+
+	// the current row
+	private char[] row = new char[256];
+	private int length;
+	// commas of the row and the number of quotes before each of them
+	private int[] commas = new int[32];
+	private int[] quotesBefore = new int[32];
+	// start and end of each column in the row
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int columns;
+
+	/*
+	 * @param reader - source of the rows; it is closed when the last row
+	 *   has been read or close is called
+	 */
+	public CsvReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/*
+	 * Splits a single row, giving the same columns as the regex.
+	 */
+	public static String[] split(String row) {
+		CsvReader csv = new CsvReader(null);
+		csv.setRow(row.toCharArray(), row.length());
+		return csv.toArray();
+	}
+
+	/*
+	 * Advances to the next row.
+	 *
+	 * @return false when there are no more rows
+	 */
+	public boolean next() {
+		if (finished) {
+			return false;
+		}
+		try {
+			if (readRow()) {
+				return true;
+			}
+		}
+		catch (IOException e) {
+			close();
+			throw new RuntimeException("Could not read CSV file", e);
+		}
+		close();
+		return false;
+	}
+
+	/*
+	 * Number of columns of the current row
+	 */
+	public int size() {
+		return columns;
+	}
+
+	public String get(int column) {
+		checkColumn(column);
+		return new String(row, starts[column], ends[column] - starts[column]);
+	}
+
+	/*
+	 * Compares a column with a value without creating a String for it.
+	 */
+	public boolean columnEquals(int column, String value) {
+		checkColumn(column);
+		int start = starts[column];
+		int columnLength = ends[column] - start;
+		if (columnLength != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < columnLength; i++) {
+			if (row[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String[] toArray() {
+		String[] values = new String[columns];
+		for (int i = 0; i < columns; i++) {
+			values[i] = get(i);
+		}
+		return values;
+	}
+
+	/*
+	 * Stops reading and releases the underlying reader.
+	 */
+	public void close() {
+		finished = true;
+		if (reader != null) {
+			try {
+				reader.close();
+			}
+			catch (IOException e) {
+				// nothing left to read from it
+			}
+		}
+	}
+
+	private void checkColumn(int column) {
+		if (column < 0 || column >= columns) {
+			throw new ArrayIndexOutOfBoundsException(column);
+		}
+	}
+
+	/*
+	 * Reads the characters up to the end of the next line into the row
+	 * and splits it.  Returns false if the input has no more lines.
+	 */
+	private boolean readRow() throws IOException {
+		length = 0;
+		int commaCount = 0;
+		int quotes = 0;
+		boolean any = false;
+		while (true) {
+			if (position == limit) {
+				limit = reader.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					if (!any) {
+						return false;
+					}
+					break;
+				}
+			}
+			char c = buffer[position++];
+			if (skipNewline) {
+				skipNewline = false;
+				if (c == '\n') {
+					continue;
+				}
+			}
+			if (c == '\n') {
+				break;
+			}
+			if (c == '\r') {
+				skipNewline = true;
+				break;
+			}
+			any = true;
+			if (c == '"') {
+				quotes++;
+			}
+			else if (c == ',') {
+				if (commaCount == commas.length) {
+					commas = Arrays.copyOf(commas, 2*commaCount);
+					quotesBefore = Arrays.copyOf(quotesBefore, 2*commaCount);
+				}
+				commas[commaCount] = length;
+				quotesBefore[commaCount] = quotes;
+				commaCount++;
+			}
+			if (length == row.length) {
+				row = Arrays.copyOf(row, 2*length);
+			}
+			row[length++] = c;
+		}
+		splitRow(commaCount, quotes);
+		return true;
+	}
+
+	private void setRow(char[] chars, int count) {
+		row = chars;
+		length = count;
+		int commaCount = 0;
+		int quotes = 0;
+		for (int i = 0; i < count; i++) {
+			if (chars[i] == '"') {
+				quotes++;
+			}
+			else if (chars[i] == ',') {
+				if (commaCount == commas.length) {
+					commas = Arrays.copyOf(commas, 2*commaCount);
+					quotesBefore = Arrays.copyOf(quotesBefore, 2*commaCount);
+				}
+				commas[commaCount] = i;
+				quotesBefore[commaCount] = quotes;
+				commaCount++;
+			}
+		}
+		splitRow(commaCount, quotes);
+	}
+
+	/*
+	 * Splits the row at the commas followed by an even number of quotes.
+	 */
+	private void splitRow(int commaCount, int quotes) {
+		columns = 0;
+		int start = 0;
+		for (int i = 0; i < commaCount; i++) {
+			if (((quotes - quotesBefore[i]) & 1) == 0) {
+				addColumn(start, commas[i]);
+				start = commas[i] + 1;
+			}
+		}
+		if (columns == 0) {
+			// no separator: the row is its only column, even if empty
+			addColumn(0, length);
+			return;
+		}
+		addColumn(start, length);
+		while (columns > 0 && starts[columns - 1] == ends[columns - 1]) {
+			columns--;
+		}
+	}
+
+	private void addColumn(int start, int end) {
+		if (columns == starts.length) {
+			starts = Arrays.copyOf(starts, 2*columns);
+			ends = Arrays.copyOf(ends, 2*columns);
+		}
+		starts[columns] = start;
+		ends[columns] = end;
+		columns++;
+	}
+}
@@ -0,0 +1,13 @@
+package parsing;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/*
+ * Callback for ParseFeed.parseEarthquake(InputStream, EarthquakeHandler),
+ * called once for each earthquake as soon as its entry has been read.
+ */
+public interface EarthquakeHandler {
+
+	public void earthquake(PointFeature feature);
+
+}
@@ -1,6 +1,10 @@
 package parsing;
 
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -14,6 +18,9 @@ import processing.data.XML;
 
 public class ParseFeed {
 
+	// start of the time in an earthquake entry's summary
+	private static final String TIME_START = "<dt>Time</dt><dd>";
+
 
 	/*
 	 * This method is to parse a GeoRSS feed corresponding to earthquakes around
@@ -23,9 +30,18 @@ public class ParseFeed {
 	 * @param fileName - file name or URL for data source
 	 */
 	public static List<PointFeature> parseEarthquake(PApplet p, String fileName) {
+		return parseEarthquake(p.loadXML(fileName));
+	}
+	
+	/*
+	 * Parses an already loaded GeoRSS feed.  This does not need a PApplet,
+	 * so it can be used from code running without a window.
+	 * 
+	 * @param rss - root node of the feed
+	 */
+	public static List<PointFeature> parseEarthquake(XML rss) {
 		List<PointFeature> features = new ArrayList<PointFeature>();
 
-		XML rss = p.loadXML(fileName);
 		// Get all items
 		XML[] itemXML = rss.getChildren("entry");
 		PointFeature point;
@@ -44,6 +60,9 @@ public class ParseFeed {
 					continue;
 				}
 
+				// Sets id to the Atom id of the entry
+				point.setId(getStringVal(itemXML[i], "id"));
+
 				// Sets title if existing
 				String titleStr = getStringVal(itemXML[i], "title");
 				if (titleStr != null) {
@@ -62,6 +81,12 @@ public class ParseFeed {
 				point.putProperty("depth", Math.abs((depthVal)));
 				
 
+				// Sets time if existing
+				Long time = parseTime(getStringVal(itemXML[i], "summary"), getStringVal(itemXML[i], "updated"));
+				if (time != null) {
+					point.putProperty("time", time);
+				}
+
 				// Sets age if existing
 				XML[] catXML = itemXML[i].getChildren("category");
 				for (int c = 0; c < catXML.length; c++) {
@@ -79,6 +104,34 @@ public class ParseFeed {
 		}
 
 	
+	/*
+	 * Opens a GeoRSS feed of earthquakes for streaming.  Unlike
+	 * parseEarthquake, the feed is never held in memory as a whole: each
+	 * PointFeature is read from the stream when the returned reader is
+	 * advanced, with the same properties parseEarthquake sets.
+	 * 
+	 * @param p - PApplet being used
+	 * @param fileName - file name or URL for data source
+	 */
+	public static QuakeFeedReader openEarthquakeFeed(PApplet p, String fileName) {
+		return new QuakeFeedReader(p.createInput(fileName));
+	}
+	
+	/*
+	 * Streams a GeoRSS feed of earthquakes, passing each PointFeature to the
+	 * handler as soon as its entry has been read.  The stream is closed
+	 * when the feed has been read.
+	 * 
+	 * @param input - stream with the feed
+	 * @param handler - receives the earthquakes in feed order
+	 */
+	public static void parseEarthquake(InputStream input, EarthquakeHandler handler) {
+		QuakeFeedReader reader = new QuakeFeedReader(input);
+		while (reader.hasNext()) {
+			handler.earthquake(reader.next());
+		}
+	}
+	
 	/*
 	 * Gets location from georss:point tag
 	 * 
@@ -120,6 +173,43 @@ public class ParseFeed {
 		return str;
 	}
 	
+	/*
+	 * Returns the time of a quake in milliseconds since the epoch, or null if
+	 * it has none.  The time the quake occurred is read from the "Time" line
+	 * of the entry's summary, e.g. "<dt>Time</dt><dd>2015-08-07 19:22:37
+	 * UTC</dd>".  An entry without one falls back to its <updated> timestamp,
+	 * which is the time of the event's last revision.
+	 *
+	 * @param summary - text of the entry's <summary>, or null
+	 * @param updated - text of the entry's <updated>, or null
+	 */
+	public static Long parseTime(String summary, String updated) {
+		if (summary != null) {
+			int start = summary.indexOf(TIME_START);
+			if (start >= 0) {
+				start += TIME_START.length();
+				int end = summary.indexOf(" UTC", start);
+				if (end > start) {
+					try {
+						return Instant.parse(summary.substring(start, end).trim().replace(' ', 'T') + "Z").toEpochMilli();
+					}
+					catch (DateTimeParseException e) {
+						// fall back to <updated>
+					}
+				}
+			}
+		}
+		if (updated != null) {
+			try {
+				return Instant.parse(updated.trim()).toEpochMilli();
+			}
+			catch (DateTimeParseException e) {
+				// no time
+			}
+		}
+		return null;
+	}
+
 	/*
 	 * Get float value from child node
 	 */
@@ -139,44 +229,52 @@ public class ParseFeed {
 	 * @param fileName - file name or URL for data source
 	 */
 	public static List<PointFeature> parseAirports(PApplet p, String fileName) {
+		return parseAirports(p.createReader(fileName));
+	}
+	
+	/*
+	 * Parses airports from an already opened file.  This does not need a
+	 * PApplet, so it can be used from code running without a window.  The
+	 * reader is closed when the file has been read.
+	 * 
+	 * @param input - reader with the contents of airports.dat
+	 */
+	public static List<PointFeature> parseAirports(Reader input) {
 		List<PointFeature> features = new ArrayList<PointFeature>();
 
-		String[] rows = p.loadStrings(fileName);
-		for (String row : rows) {
+		// rows are split by commas not in quotations
+		CsvReader columns = new CsvReader(input);
+		while (columns.next()) {
 			
 			// hot-fix for altitude when lat lon out of place
 			int i = 0;
 			
-			// split row by commas not in quotations
-			String[] columns = row.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
-			
 			// get location and create feature
-			//System.out.println(columns[6]);
-			float lat = Float.parseFloat(columns[6]);
-			float lon = Float.parseFloat(columns[7]);
+			float lat = Float.parseFloat(columns.get(6));
+			float lon = Float.parseFloat(columns.get(7));
 			
 			Location loc = new Location(lat, lon);
 			PointFeature point = new PointFeature(loc);
 			
 			// set ID to OpenFlights unique identifier
-			point.setId(columns[0]);
+			point.setId(columns.get(0));
 			
 			// get other fields from csv
-			point.addProperty("name", columns[1]);
-			point.putProperty("city", columns[2]);
-			point.putProperty("country", columns[3]);
+			point.addProperty("name", columns.get(1));
+			point.putProperty("city", columns.get(2));
+			point.putProperty("country", columns.get(3));
 			
 			// pretty sure IATA/FAA is used in routes.dat
 			// get airport IATA/FAA code
-			if(!columns[4].equals("")) {
-				point.putProperty("code", columns[4]);
+			if(!columns.columnEquals(4, "")) {
+				point.putProperty("code", columns.get(4));
 			}
 			// get airport ICAO code if no IATA
-			else if(!columns[5].equals("")) {
-				point.putProperty("code", columns[5]);
+			else if(!columns.columnEquals(5, "")) {
+				point.putProperty("code", columns.get(5));
 			}
 			
-			point.putProperty("altitude", columns[8 + i]);
+			point.putProperty("altitude", columns.get(8 + i));
 			
 			features.add(point);
 		}
@@ -198,33 +296,36 @@ public class ParseFeed {
 	 * @param fileName - file name or URL for data source
 	 */
 	public static List<ShapeFeature> parseRoutes(PApplet p, String fileName) {
+		return parseRoutes(p.createReader(fileName));
+	}
+	
+	/*
+	 * Parses routes from an already opened file.  This does not need a
+	 * PApplet, so it can be used from code running without a window.  The
+	 * reader is closed when the file has been read.
+	 * 
+	 * @param input - reader with the contents of routes.dat
+	 */
+	public static List<ShapeFeature> parseRoutes(Reader input) {
 		List<ShapeFeature> routes = new ArrayList<ShapeFeature>();
 		
-		String[] rows = p.loadStrings(fileName);
-		
-		for(String row : rows) {
-			String[] columns = row.split(",");
-			
-			ShapeFeature route = new ShapeFeature(Feature.FeatureType.LINES);
-			
-			// set id to be OpenFlights identifier for source airport
+		CsvReader columns = new CsvReader(input);
+		while (columns.next()) {
 			
 			// check that both airports on route have OpenFlights Identifier
-			if(!columns[3].equals("\\N") && !columns[5].equals("\\N")){
+			if(!columns.columnEquals(3, "\\N") && !columns.columnEquals(5, "\\N")){
+				ShapeFeature route = new ShapeFeature(Feature.FeatureType.LINES);
+				
 				// set "source" property to be OpenFlights identifier for source airport
-				route.putProperty("source", columns[3]);
+				route.putProperty("source", columns.get(3));
 				// "destination property" -- OpenFlights identifier
-				route.putProperty("destination", columns[5]);
+				route.putProperty("destination", columns.get(5));
 				
 				routes.add(route);
 			}
 		}
-			
 		
 		return routes;
-		
-		
-		
 	}
 	
 	
@@ -243,16 +344,25 @@ public class ParseFeed {
 	 * @return A HashMap of country->average age of death
 	 */
 	public static HashMap<String, Float> loadLifeExpectancyFromCSV(PApplet p, String fileName) {
+		return loadLifeExpectancyFromCSV(p.createReader(fileName));
+	}
+	
+	/*
+	 * Reads life expectancy from an already opened file.  This does not need
+	 * a PApplet, so it can be used from code running without a window.  The
+	 * reader is closed when the file has been read.
+	 * 
+	 * @param input - reader with the contents of the csv file
+	 * @return A HashMap of country->average age of death
+	 */
+	public static HashMap<String, Float> loadLifeExpectancyFromCSV(Reader input) {
 		// HashMap key: country ID and  data: lifeExp at birth
 		HashMap<String, Float> lifeExpMap = new HashMap<String, Float>();
 
-		// get lines of csv file
-		String[] rows = p.loadStrings(fileName);
-		
-		// Reads country name and population density value from CSV row
-		for (String row : rows) {
-			// split row by commas not in quotations
-			String[] columns = row.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
+		// Reads country name and population density value from CSV row,
+		// split by commas not in quotations
+		CsvReader columns = new CsvReader(input);
+		while (columns.next()) {
 			
 			// check if there is any life expectancy data from any year, get most recent
 			/*
@@ -261,11 +371,11 @@ public class ParseFeed {
 			 * and store the year as the second value. (There are many other ways to do this)
 			 */
 			//
-			for(int i = columns.length - 1; i > 3; i--) {
+			for(int i = columns.size() - 1; i > 3; i--) {
 				
 				// check if value exists for year
-				if(!columns[i].equals("..")) {
-					lifeExpMap.put(columns[3], Float.parseFloat(columns[i]));
+				if(!columns.columnEquals(i, "..")) {
+					lifeExpMap.put(columns.get(3), Float.parseFloat(columns.get(i)));
 					
 					// break once most recent data is found
 					break;
@@ -0,0 +1,227 @@
+package parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/*
+ * Streaming reader for a GeoRSS feed of earthquakes.  Entries are read one
+ * <entry> at a time with StAX, so memory use does not grow with the size of
+ * the feed, and each PointFeature is available as soon as its entry has
+ * been read, before the rest of the document has arrived.
+ *
+ * The features have the same properties as those built by
+ * ParseFeed.parseEarthquake: "title", "magnitude", "depth", "time" and
+ * "age".  The feature id is set to the Atom <id> of the entry.
+ */
+public class QuakeFeedReader implements Iterator<PointFeature> {
+
+	private static final XMLInputFactory factory = createFactory();
+
+	private InputStream input;
+	private XMLStreamReader reader;
+
+	// the next feature to return, read ahead by hasNext
+	private PointFeature next;
+	private String nextUpdated;
+	// <updated> text of the feature last returned by next
+	private String updated;
+	private boolean finished;
+
+	/*
+	 * @param input - stream with the feed; it is closed when the end of the
+	 *   feed is reached or close is called
+	 */
+	public QuakeFeedReader(InputStream input) {
+		this.input = input;
+		try {
+			reader = factory.createXMLStreamReader(input);
+		}
+		catch (XMLStreamException e) {
+			throw new RuntimeException("Could not read earthquake feed", e);
+		}
+	}
+
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			next = readEntry();
+		}
+		return next != null;
+	}
+
+	public PointFeature next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PointFeature point = next;
+		updated = nextUpdated;
+		next = null;
+		return point;
+	}
+
+	/*
+	 * Returns the <updated> timestamp, as written in the feed, of the entry
+	 * last returned by next, or null if the entry has none.  USGS changes it
+	 * whenever an event is revised.
+	 */
+	public String getUpdated() {
+		return updated;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * Stops reading and releases the underlying stream.
+	 */
+	public void close() {
+		finished = true;
+		try {
+			reader.close();
+			input.close();
+		}
+		catch (XMLStreamException e) {
+			// nothing left to read from it
+		}
+		catch (IOException e) {
+			// nothing left to read from it
+		}
+	}
+
+	/*
+	 * Reads up to the next entry with a location and returns it as a
+	 * feature, or null when the feed is exhausted.
+	 */
+	private PointFeature readEntry() {
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+						"entry".equals(reader.getLocalName())) {
+					PointFeature point = parseEntry();
+					if (point != null) {
+						return point;
+					}
+				}
+			}
+		}
+		catch (XMLStreamException e) {
+			close();
+			throw new RuntimeException("Could not read earthquake feed", e);
+		}
+		close();
+		return null;
+	}
+
+	/*
+	 * Parses the children of the current <entry> element, leaving the reader
+	 * on its end tag.  Like the DOM parser, only the first child with a
+	 * given name is used.
+	 */
+	private PointFeature parseEntry() throws XMLStreamException {
+		String id = null;
+		String titleStr = null;
+		String pointStr = null;
+		String elevStr = null;
+		String summaryStr = null;
+		String ageStr = null;
+		nextUpdated = null;
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = qualifiedName();
+				if (depth == 1 && name.equals("id") && id == null) {
+					id = reader.getElementText();
+				}
+				else if (depth == 1 && name.equals("title") && titleStr == null) {
+					titleStr = reader.getElementText();
+				}
+				else if (depth == 1 && name.equals("updated") && nextUpdated == null) {
+					nextUpdated = reader.getElementText();
+				}
+				else if (depth == 1 && name.equals("summary") && summaryStr == null) {
+					summaryStr = reader.getElementText();
+				}
+				else if (depth == 1 && name.equals("georss:point") && pointStr == null) {
+					pointStr = reader.getElementText();
+				}
+				else if (depth == 1 && name.equals("georss:elev") && elevStr == null) {
+					elevStr = reader.getElementText();
+				}
+				else {
+					if (depth == 1 && name.equals("category") &&
+							"Age".equals(reader.getAttributeValue(null, "label"))) {
+						ageStr = reader.getAttributeValue(null, "term");
+					}
+					depth++;
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+
+		// entries without a location are skipped
+		if (pointStr == null) {
+			return null;
+		}
+		String[] latLon = pointStr.split(" ");
+		float lat = Float.valueOf(latLon[0]);
+		float lon = Float.valueOf(latLon[1]);
+		PointFeature point = new PointFeature(new Location(lat, lon));
+		point.setId(id);
+
+		if (titleStr != null) {
+			point.putProperty("title", titleStr);
+			// get magnitude from title
+			point.putProperty("magnitude", Float.parseFloat(titleStr.substring(2, 5)));
+		}
+
+		if (elevStr != null) {
+			// get one decimal place when converting to km
+			float depthVal = Float.parseFloat(elevStr);
+			int interVal = (int)(depthVal/100);
+			depthVal = (float) interVal/10;
+			point.putProperty("depth", Math.abs((depthVal)));
+		}
+
+		Long time = ParseFeed.parseTime(summaryStr, nextUpdated);
+		if (time != null) {
+			point.putProperty("time", time);
+		}
+
+		if (ageStr != null) {
+			point.putProperty("age", ageStr);
+		}
+
+		return point;
+	}
+
+	// element name as written in the feed, e.g. "georss:point"
+	private String qualifiedName() {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.length() == 0) {
+			return reader.getLocalName();
+		}
+		return prefix + ":" + reader.getLocalName();
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+}